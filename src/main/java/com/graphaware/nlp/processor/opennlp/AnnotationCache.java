@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Size-bounded cache of annotation results: whole documents, keyed by a SHA-256 of the text, the language and the
+ * fingerprint of the pipeline that produced them (see {@link #key}), or single sentences keyed by their text.
+ *
+ * Entries are weighed in (estimated) bytes and the least recently used ones are evicted once the byte budget is
+ * exceeded. With the {@link EvictionPolicy#TINY_LFU} policy a new entry must also be requested at least as often as the
+ * entries it would evict, so that a scan of unique texts doesn't flush the frequently annotated ones; frequencies are
+ * tracked by a count-min sketch that is halved periodically. The cache is thread safe.
+ */
+final class AnnotationCache<V> {
+
+    enum EvictionPolicy {
+        LRU, TINY_LFU;
+
+        static EvictionPolicy fromName(String name) {
+            String value = name.trim().replace("-", "").replace("_", "");
+            for (EvictionPolicy policy : values()) {
+                if (policy.name().replace("_", "").equalsIgnoreCase(value)) {
+                    return policy;
+                }
+            }
+            throw new RuntimeException("Unknown cache eviction policy: " + name + ", expected lru or tinylfu");
+        }
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long maxBytes;
+    private final EvictionPolicy policy;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    AnnotationCache(long maxBytes, EvictionPolicy policy, ToLongFunction<V> weigher) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.weigher = weigher;
+        // one counter per 256 bytes of budget is plenty, even annotated sentences are rarely smaller than that
+        this.sketch = policy == EvictionPolicy.TINY_LFU ? new FrequencySketch((int) Math.min(maxBytes / 256, 1 << 20)) : null;
+    }
+
+    /**
+     * Parses a size in bytes, optionally followed by k, m or g.
+     */
+    static long parseSize(String size) {
+        String value = size.trim().toLowerCase();
+        long unit = 1;
+        if (value.endsWith("k") || value.endsWith("m") || value.endsWith("g")) {
+            unit = 1L << (10 * ("kmg".indexOf(value.charAt(value.length() - 1)) + 1));
+            value = value.substring(0, value.length() - 1).trim();
+        }
+        return Long.parseLong(value) * unit;
+    }
+
+    static String key(String text, String lang, String fingerprint) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException("SHA-256 is not available", ex);
+        }
+        digest.update(String.valueOf(lang).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        byte[] hash = digest.digest();
+        char[] result = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            result[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+            result[2 * i + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(result);
+    }
+
+    synchronized V get(String key) {
+        if (sketch != null) {
+            sketch.increment(key);
+        }
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    synchronized void put(String key, V value) {
+        long weight = weigher.applyAsLong(value) + key.length() * 2L;
+        if (weight > maxBytes) {
+            rejections++;
+            return;
+        }
+        Entry<V> previous = entries.get(key);
+        // a rejected value leaves the previous one in place
+        if (sketch != null && !admit(key, weight, previous != null ? previous.weight : 0)) {
+            rejections++;
+            return;
+        }
+        if (previous != null) {
+            entries.remove(key);
+            bytes -= previous.weight;
+        }
+        entries.put(key, new Entry<>(value, weight));
+        bytes += weight;
+        Iterator<Entry<V>> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().weight;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /*
+     * TinyLFU admission: the candidate is kept unless an entry it would push out is more popular. Ties are admitted,
+     * otherwise new texts could not replace the cold ones until the counters are halved. The bytes of the entry it
+     * replaces, if any, are freed anyway.
+     */
+    private boolean admit(String key, long weight, long replaced) {
+        int frequency = sketch.frequency(key);
+        long freed = maxBytes - bytes + replaced;
+        for (Map.Entry<String, Entry<V>> victim : entries.entrySet()) {
+            if (freed >= weight) {
+                return true;
+            }
+            if (victim.getKey().equals(key)) {
+                continue;
+            }
+            if (sketch.frequency(victim.getKey()) > frequency) {
+                return false;
+            }
+            freed += victim.getValue().weight;
+        }
+        return freed >= weight;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("policy", policy.name().toLowerCase());
+        statistics.put("entries", entries.size());
+        statistics.put("bytes", bytes);
+        statistics.put("maxBytes", maxBytes);
+        statistics.put("hits", hits);
+        statistics.put("misses", misses);
+        statistics.put("evictions", evictions);
+        statistics.put("rejections", rejections);
+        long requests = hits + misses;
+        statistics.put("hitRate", requests > 0 ? (double) hits / requests : 0.0);
+        return statistics;
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /*
+     * Count-min sketch with four rows of saturating counters; all counters are halved every 10 * width increments so
+     * that old popularity fades away.
+     */
+    private static class FrequencySketch {
+
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final int[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int width) {
+            int size = Integer.highestOneBit(Math.max(256, width - 1)) << 1;
+            this.counters = new int[DEPTH][size];
+            this.mask = size - 1;
+            this.sampleSize = 10 * size;
+        }
+
+        void increment(String key) {
+            int hash = key.hashCode();
+            int frequency = frequency(hash);
+            if (frequency < MAX_COUNT) {
+                // conservative update: only the smallest counters grow
+                for (int row = 0; row < DEPTH; row++) {
+                    int index = index(hash, row);
+                    if (counters[row][index] == frequency) {
+                        counters[row][index]++;
+                    }
+                }
+            }
+            if (++additions >= sampleSize) {
+                for (int[] row : counters) {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] >>>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(String key) {
+            return frequency(key.hashCode());
+        }
+
+        private int frequency(int hash) {
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, counters[row][index(hash, row)]);
+            }
+            return frequency;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
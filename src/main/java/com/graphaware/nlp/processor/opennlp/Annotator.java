@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Annotation stages of an {@link OpenNLPPipeline}, declared in execution order.
+ *
+ * The "annotators" property of a pipeline is parsed once into an EnumSet, so sentences are dispatched on bits instead
+ * of string lookups and a misspelled annotator is reported when the pipeline is built.
+ */
+public enum Annotator {
+
+    TOKENIZE("tokenize"),
+    POS("pos", TOKENIZE),
+    LEMMA("lemma", POS),
+    RELATION("relation", POS),
+    NER("ner", TOKENIZE),
+    SENTIMENT("sentiment", TOKENIZE),
+    STOPWORD("stopword");
+
+    private final String name;
+    // EnumSet can't be used here, the enum constants don't exist yet while they are being constructed
+    private final List<Annotator> requires;
+
+    Annotator(String name, Annotator... requires) {
+        this.name = name;
+        this.requires = Collections.unmodifiableList(Arrays.asList(requires));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Annotator> getRequires() {
+        return requires;
+    }
+
+    public static Annotator fromName(String name) {
+        for (Annotator annotator : values()) {
+            if (annotator.name.equalsIgnoreCase(name.trim())) {
+                return annotator;
+            }
+        }
+        throw new RuntimeException("Unknown annotator: " + name + ", valid annotators are " + toString(EnumSet.allOf(Annotator.class)));
+    }
+
+    /**
+     * Parses a comma separated list of annotator names; blank entries are ignored, unknown names are an error.
+     */
+    public static EnumSet<Annotator> parse(String annotators) {
+        EnumSet<Annotator> result = EnumSet.noneOf(Annotator.class);
+        if (annotators == null) {
+            return result;
+        }
+        Arrays.stream(annotators.split(","))
+                .filter(name -> !name.trim().isEmpty())
+                .forEach(name -> result.add(fromName(name)));
+        return result;
+    }
+
+    public static String toString(Set<Annotator> annotators) {
+        return annotators.stream().map(Annotator::getName).collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable record of the output of a pipeline for one document: sentences, their sentiment and the tokens emitted
+ * through {@link TokenEmitter}, as flat arrays.
+ *
+ * Domain objects built from an annotation are mutable and handed over to the caller, so they can't be cached
+ * themselves; instead the tokens are replayed into a fresh emitter, which gives the same result as annotating the
+ * text again without running any model.
+ */
+final class CachedAnnotation {
+
+    private final List<CachedSentence> sentences;
+    private final long bytes;
+
+    private CachedAnnotation(List<CachedSentence> sentences) {
+        this.sentences = Collections.unmodifiableList(sentences);
+        this.bytes = 16 + sentences.stream().mapToLong(CachedSentence::estimateBytes).sum();
+    }
+
+    List<CachedSentence> getSentences() {
+        return sentences;
+    }
+
+    /**
+     * Rough estimate of the heap used by this record.
+     */
+    long estimateBytes() {
+        return bytes;
+    }
+
+    static final class CachedSentence {
+
+        private final String sentence;
+        private final int sentenceNumber;
+        private final String sentiment;
+        private final int[] posTagIds;
+        private final int size;
+        private final String[] values;
+        private final String[] lemmas;
+        private final int[] neTypes;
+        private final int[] firstWords;
+        private final int[] endWords;
+        private final int[] begins;
+        private final int[] ends;
+
+        private CachedSentence(OpenNLPAnnotation.Sentence sentence, SentenceRecorder tokens) {
+            this.sentence = sentence.getSentence();
+            this.sentenceNumber = sentence.getSentenceNumber();
+            this.sentiment = sentence.getSentiment();
+            this.size = tokens != null ? tokens.size : 0;
+            this.posTagIds = tokens != null ? tokens.posTagIds : new int[0];
+            this.values = tokens != null ? Arrays.copyOf(tokens.values, size) : new String[0];
+            this.lemmas = tokens != null ? Arrays.copyOf(tokens.lemmas, size) : new String[0];
+            this.neTypes = tokens != null ? Arrays.copyOf(tokens.neTypes, size) : new int[0];
+            this.firstWords = tokens != null ? Arrays.copyOf(tokens.firstWords, size) : new int[0];
+            this.endWords = tokens != null ? Arrays.copyOf(tokens.endWords, size) : new int[0];
+            this.begins = tokens != null ? Arrays.copyOf(tokens.begins, size) : new int[0];
+            this.ends = tokens != null ? Arrays.copyOf(tokens.ends, size) : new int[0];
+        }
+
+        String getSentence() {
+            return sentence;
+        }
+
+        int getSentenceNumber() {
+            return sentenceNumber;
+        }
+
+        String getSentiment() {
+            return sentiment;
+        }
+
+        int getPosTagId(int word) {
+            return word < posTagIds.length ? posTagIds[word] : -1;
+        }
+
+        /**
+         * Emits the recorded tokens again, in their original order.
+         */
+        void replay(TokenEmitter.SentenceTokens tokens) {
+            for (int i = 0; i < size; i++) {
+                tokens.token(values[i], lemmas[i], neTypes[i], firstWords[i], endWords[i], begins[i], ends[i]);
+            }
+            tokens.end();
+        }
+
+        private long estimateBytes() {
+            long result = 96 + stringBytes(sentence) + stringBytes(sentiment) + 4L * posTagIds.length + 5 * 16;
+            for (int i = 0; i < size; i++) {
+                // lemmas are often the value itself
+                result += stringBytes(values[i]) + (lemmas[i] != values[i] ? stringBytes(lemmas[i]) : 0) + 2 * 8 + 5 * 4;
+            }
+            return result;
+        }
+
+        private static long stringBytes(String value) {
+            return value != null ? 40 + 2L * value.length() : 0;
+        }
+    }
+
+    /**
+     * Emitter decorator recording the tokens of a document on their way to the actual emitter.
+     */
+    static final class Recorder implements TokenEmitter {
+
+        private final TokenEmitter emitter;
+        private final Map<Integer, SentenceRecorder> sentences = new ConcurrentHashMap<>();
+
+        Recorder(TokenEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public SentenceTokens startSentence(OpenNLPAnnotation.Sentence sentence) {
+            SentenceRecorder recorder = new SentenceRecorder(sentence.getPosTagIds(), emitter.startSentence(sentence));
+            sentences.put(sentence.getSentenceNumber(), recorder);
+            return recorder;
+        }
+
+        CachedAnnotation build(List<OpenNLPAnnotation.Sentence> annotated) {
+            List<CachedSentence> result = new ArrayList<>(annotated.size());
+            for (OpenNLPAnnotation.Sentence sentence : annotated) {
+                result.add(new CachedSentence(sentence, sentences.get(sentence.getSentenceNumber())));
+            }
+            return new CachedAnnotation(result);
+        }
+    }
+
+    private static final class SentenceRecorder implements TokenEmitter.SentenceTokens {
+
+        private final int[] posTagIds;
+        private final TokenEmitter.SentenceTokens delegate;
+        private int size;
+        private String[] values = new String[16];
+        private String[] lemmas = new String[16];
+        private int[] neTypes = new int[16];
+        private int[] firstWords = new int[16];
+        private int[] endWords = new int[16];
+        private int[] begins = new int[16];
+        private int[] ends = new int[16];
+
+        SentenceRecorder(int[] posTagIds, TokenEmitter.SentenceTokens delegate) {
+            this.posTagIds = posTagIds != null ? posTagIds : new int[0];
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void token(String value, String lemma, int neType, int firstWord, int endWord, int begin, int end) {
+            if (size == values.length) {
+                int capacity = size * 2;
+                values = Arrays.copyOf(values, capacity);
+                lemmas = Arrays.copyOf(lemmas, capacity);
+                neTypes = Arrays.copyOf(neTypes, capacity);
+                firstWords = Arrays.copyOf(firstWords, capacity);
+                endWords = Arrays.copyOf(endWords, capacity);
+                begins = Arrays.copyOf(begins, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+            }
+            values[size] = value;
+            lemmas[size] = lemma;
+            neTypes[size] = neType;
+            firstWords[size] = firstWord;
+            endWords[size] = endWord;
+            begins[size] = begin;
+            ends[size] = end;
+            size++;
+            delegate.token(value, lemma, neType, firstWord, endWord, begin, end);
+        }
+
+        @Override
+        public void end() {
+            delegate.end();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import opennlp.tools.lemmatizer.Lemmatizer;
+
+/**
+ * Lemmatizer remembering the lemma of the most recent (word, POS) pairs in front of a dictionary.
+ *
+ * Word/POS pairs follow a Zipf distribution, so a small direct-mapped table serves most lookups without building the
+ * key lists and result arrays of the dictionary. The table is indexed by the hash of the word and the interned POS id
+ * ({@link TagVocabulary#POS}); a slot holds a single immutable entry and is simply overwritten on collision, so lookups
+ * and updates are lock free. Words missing from the table are lemmatized with one dictionary call per sentence.
+ *
+ * The instance is loaded through the model registry, so every pipeline using the same dictionary shares its table.
+ */
+final class CachingLemmatizer implements Lemmatizer {
+
+    private final Lemmatizer dictionary;
+    private final Entry[] table;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param size number of cached pairs, rounded up to a power of two; 0 disables the cache
+     */
+    CachingLemmatizer(Lemmatizer dictionary, int size) {
+        this.dictionary = dictionary;
+        int capacity = size > 0 ? Integer.highestOneBit(Math.max(2, size - 1)) << 1 : 0;
+        this.table = new Entry[capacity];
+        this.mask = capacity - 1;
+    }
+
+    @Override
+    public String[] lemmatize(String[] words, String[] posTags) {
+        int[] posTagIds = new int[posTags.length];
+        for (int i = 0; i < posTags.length; i++) {
+            posTagIds[i] = posTags[i] != null ? TagVocabulary.POS.getId(posTags[i]) : -1;
+        }
+        return lemmatize(words, posTags, posTagIds);
+    }
+
+    /**
+     * Same as {@link #lemmatize(String[], String[])}, with the POS tags already interned.
+     */
+    String[] lemmatize(String[] words, String[] posTags, int[] posTagIds) {
+        if (table.length == 0) {
+            return dictionary.lemmatize(words, posTags);
+        }
+        String[] result = new String[words.length];
+        int[] missing = null;
+        int missingCount = 0;
+        for (int i = 0; i < words.length; i++) {
+            Entry entry = table[slot(words[i], posTagIds[i])];
+            if (entry != null && entry.posTagId == posTagIds[i] && entry.word.equals(words[i])) {
+                result[i] = entry.lemma;
+            } else {
+                if (missing == null) {
+                    missing = new int[words.length - i];
+                }
+                missing[missingCount++] = i;
+            }
+        }
+        hits.add(words.length - missingCount);
+        if (missingCount == 0) {
+            return result;
+        }
+        misses.add(missingCount);
+        String[] missingWords = new String[missingCount];
+        String[] missingTags = new String[missingCount];
+        for (int i = 0; i < missingCount; i++) {
+            missingWords[i] = words[missing[i]];
+            missingTags[i] = posTags[missing[i]];
+        }
+        String[] lemmas = dictionary.lemmatize(missingWords, missingTags);
+        for (int i = 0; i < missingCount; i++) {
+            int word = missing[i];
+            result[word] = lemmas[i];
+            table[slot(words[word], posTagIds[word])] = new Entry(words[word], posTagIds[word], lemmas[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public List<List<String>> lemmatize(List<String> words, List<String> posTags) {
+        return dictionary.lemmatize(words, posTags);
+    }
+
+    Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("size", table.length);
+        statistics.put("entries", Arrays.stream(table).filter(entry -> entry != null).count());
+        statistics.put("hits", hits.sum());
+        statistics.put("misses", misses.sum());
+        return statistics;
+    }
+
+    private int slot(String word, int posTagId) {
+        int hash = word.hashCode() * 31 + posTagId;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static final class Entry {
+
+        private final String word;
+        private final int posTagId;
+        private final String lemma;
+
+        Entry(String word, int posTagId, String lemma) {
+            this.word = word;
+            this.posTagId = posTagId;
+            this.lemma = lemma;
+        }
+    }
+}
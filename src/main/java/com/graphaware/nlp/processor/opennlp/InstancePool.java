@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Pool of instances that are not thread-safe, each one used by a single thread at a time.
+ *
+ * Instances are created on demand when the pool is empty and at most maxIdle of them are kept once released; the most
+ * recently released instance is handed out first. Unlike thread locals, the pool belongs to its owner: once closed it
+ * drops the idle instances and the ones still in use when they are released, so nothing keeps them (and the models
+ * they reference) reachable from long-lived threads.
+ */
+final class InstancePool<T> {
+
+    private final Supplier<T> factory;
+    private final int maxIdle;
+    private final Deque<T> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private volatile boolean closed;
+
+    InstancePool(Supplier<T> factory, int maxIdle) {
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+    }
+
+    T borrow() {
+        T instance = idle.pollFirst();
+        if (instance != null) {
+            idleCount.decrementAndGet();
+            return instance;
+        }
+        return factory.get();
+    }
+
+    void release(T instance) {
+        if (closed) {
+            return;
+        }
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            return;
+        }
+        idle.offerFirst(instance);
+        if (closed) {
+            // closed in the meantime
+            clear();
+        }
+    }
+
+    void close() {
+        closed = true;
+        clear();
+    }
+
+    int getIdleCount() {
+        return idleCount.get();
+    }
+
+    private void clear() {
+        while (idle.pollFirst() != null) {
+            idleCount.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+/**
+ * Finished annotation of a sentence (word offsets, POS ids, lemmas, named entities and sentiment), kept by a pipeline
+ * to annotate the same sentence text again without running the models.
+ *
+ * Word offsets are relative to the sentence, so they apply as they are wherever the sentence occurs in a document. All
+ * arrays are shared with the sentences the memo is restored into, none of them is modified after annotation.
+ */
+final class MemoizedSentence {
+
+    private final int[] wordStarts;
+    private final int[] wordEnds;
+    private final int[] posTagIds;
+    private final String[] lemmas;
+    private final NamedEntitySpans namedEntities;
+    private final String sentiment;
+    private final double sentimentThreshold;
+
+    MemoizedSentence(OpenNLPAnnotation.Sentence sentence, NamedEntitySpans namedEntities, double sentimentThreshold) {
+        this.wordStarts = sentence.getWordStarts();
+        this.wordEnds = sentence.getWordEnds();
+        this.posTagIds = sentence.getPosTagIds();
+        this.lemmas = sentence.getLemmas();
+        if (namedEntities != null) {
+            // spans are sorted lazily, which must not happen concurrently once they are shared
+            namedEntities.size();
+        }
+        this.namedEntities = namedEntities;
+        this.sentiment = sentence.getSentiment();
+        this.sentimentThreshold = sentimentThreshold;
+    }
+
+    /**
+     * Copies the annotation into a sentence with the same text.
+     *
+     * @return the named entities of the sentence, null if it has no words
+     */
+    NamedEntitySpans restore(OpenNLPAnnotation.Sentence sentence) {
+        sentence.setWordOffsets(wordStarts, wordEnds);
+        sentence.setPosTagIds(posTagIds);
+        sentence.setLemmas(lemmas);
+        return namedEntities;
+    }
+
+    /**
+     * Sentiment computed with the given probability threshold, null if it was computed with another one (or not at
+     * all).
+     */
+    String getSentiment(double threshold) {
+        return threshold == sentimentThreshold ? sentiment : null;
+    }
+
+    long estimateBytes() {
+        long result = 64;
+        if (wordStarts != null) {
+            result += 2 * (16 + 4L * wordStarts.length);
+        }
+        if (posTagIds != null) {
+            result += 16 + 4L * posTagIds.length;
+        }
+        if (lemmas != null) {
+            result += 16 + 8L * lemmas.length;
+            for (String lemma : lemmas) {
+                result += lemma != null ? 40 + 2L * lemma.length() : 0;
+            }
+        }
+        if (namedEntities != null) {
+            result += 64 + 12L * namedEntities.size();
+        }
+        return result;
+    }
+}
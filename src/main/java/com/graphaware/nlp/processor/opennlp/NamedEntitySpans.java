@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.util.Arrays;
+import opennlp.tools.util.Span;
+
+/**
+ * Named entities found in a sentence by all the NER models, as parallel primitive arrays (start, end, type id) sorted
+ * by start word.
+ *
+ * Entities starting at the same word keep the order in which they were added (model order, then the order returned by
+ * the model), so overlapping results are always merged the same way. Type ids come from {@link TagVocabulary#NE}.
+ */
+final class NamedEntitySpans {
+
+    private int[] starts;
+    private int[] ends;
+    private int[] types;
+    private int size;
+    private boolean sorted = true;
+
+    NamedEntitySpans() {
+        this(8);
+    }
+
+    NamedEntitySpans(int capacity) {
+        starts = new int[capacity];
+        ends = new int[capacity];
+        types = new int[capacity];
+    }
+
+    void add(Span[] spans) {
+        if (spans == null) {
+            return;
+        }
+        for (Span span : spans) {
+            add(span.getStart(), span.getEnd(), TagVocabulary.NE.getId(span.getType().toUpperCase()));
+        }
+    }
+
+    void add(int start, int end, int type) {
+        if (size == starts.length) {
+            int capacity = Math.max(8, size * 2);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            types = Arrays.copyOf(types, capacity);
+        }
+        if (size > 0 && start < starts[size - 1]) {
+            sorted = false;
+        }
+        starts[size] = start;
+        ends[size] = end;
+        types[size] = type;
+        size++;
+    }
+
+    int size() {
+        sort();
+        return size;
+    }
+
+    int getStart(int index) {
+        sort();
+        return starts[index];
+    }
+
+    int getEnd(int index) {
+        sort();
+        return ends[index];
+    }
+
+    int getType(int index) {
+        sort();
+        return types[index];
+    }
+
+    /*
+     * Stable sort by start: start and insertion position are packed in a long, so that a primitive sort keeps entities
+     * with the same start in insertion order.
+     */
+    private void sort() {
+        if (sorted) {
+            return;
+        }
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) starts[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] sortedStarts = new int[starts.length];
+        int[] sortedEnds = new int[ends.length];
+        int[] sortedTypes = new int[types.length];
+        for (int i = 0; i < size; i++) {
+            int from = (int) keys[i];
+            sortedStarts[i] = starts[from];
+            sortedEnds[i] = ends[from];
+            sortedTypes[i] = types[from];
+        }
+        starts = sortedStarts;
+        ends = sortedEnds;
+        types = sortedTypes;
+        sorted = true;
+    }
+}
@@ -7,34 +7,44 @@ package com.graphaware.nlp.processor.opennlp;
 
 import com.graphaware.nlp.util.OptionalNLPParameters;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
 import opennlp.tools.util.Span;
 
 public class OpenNLPAnnotation {
 
-    private static final double DEFAULT_SENTIMENT_PROBTHR = 0.7;
+    public static final double DEFAULT_SENTIMENT_PROBTHR = 0.7;
 
     private final String text;
     private List<Sentence> sentences;
     public static final String DEFAULT_LEMMA_OPEN_NLP = "O";
     public Map<String, String> otherParams;
+    private TokenEmitter tokenEmitter;
+    private final TagVocabulary posVocabulary;
+    private final TagVocabulary neVocabulary;
 
     public OpenNLPAnnotation(String text, Map<String, String> otherParams) {
-        this.text = text;
-        this.otherParams = otherParams;
+        this(text, otherParams, TagVocabulary.POS, TagVocabulary.NE);
     }
 
     public OpenNLPAnnotation(String text) {
         this(text, null);
     }
 
+    /*
+     * Annotation whose tokens intern their tags in the given vocabularies instead of the shared ones. The pipelines use
+     * the ids of the shared vocabularies, so such an annotation can't be passed to them.
+     */
+    OpenNLPAnnotation(String text, Map<String, String> otherParams, TagVocabulary posVocabulary, TagVocabulary neVocabulary) {
+        this.text = text;
+        this.otherParams = otherParams;
+        this.posVocabulary = posVocabulary;
+        this.neVocabulary = neVocabulary;
+    }
+
     public String getText() {
         return text;
     }
@@ -42,7 +52,7 @@ public class OpenNLPAnnotation {
     public void setSentences(Span[] sentencesArray) {
         sentences = new ArrayList<>();
         for (Span sentence : sentencesArray) {
-            sentences.add(new Sentence(sentence, getText()));
+            sentences.add(new Sentence(sentence, getText(), sentences.size()));
         }
     }
 
@@ -50,6 +60,14 @@ public class OpenNLPAnnotation {
         return sentences;
     }
 
+    TokenEmitter getTokenEmitter() {
+        return tokenEmitter;
+    }
+
+    void setTokenEmitter(TokenEmitter tokenEmitter) {
+        this.tokenEmitter = tokenEmitter;
+    }
+
     public double getSentimentProb() {
         if (otherParams != null && otherParams.containsKey(OptionalNLPParameters.SENTIMENT_PROB_THR)) {
             return Double.parseDouble(otherParams.get(OptionalNLPParameters.SENTIMENT_PROB_THR));
@@ -64,12 +82,16 @@ public class OpenNLPAnnotation {
     class Sentence {
 
         private final Span sentence;
-        private final String sentenceText;
+        private final String documentText;
+        private final int sentenceNumber;
+        private String sentenceText;
         private String sentenceSentiment;
         private List<Integer> nounphrases;
+        // columnar layout: word offsets (relative to the sentence) and interned POS ids, one entry per word
+        private int[] wordStarts;
+        private int[] wordEnds;
+        private int[] posTagIds;
         private String[] words;
-        private Span[] wordSpans;
-        private String[] posTags;
         private String[] lemmas;
         private final Map<String, Token> tokens;
         private Span[] chunks;
@@ -78,8 +100,13 @@ public class OpenNLPAnnotation {
         private final String defaultStringValue = "-"; // @Deprecated
 
         public Sentence(Span sentence, String text) {
+            this(sentence, text, 0);
+        }
+
+        public Sentence(Span sentence, String text, int sentenceNumber) {
             this.sentence = sentence;
-            this.sentenceText = String.valueOf(sentence.getCoveredText(text));
+            this.documentText = text;
+            this.sentenceNumber = sentenceNumber;
             this.tokens = new HashMap<>();
         }
 
@@ -90,11 +117,18 @@ public class OpenNLPAnnotation {
             this.nounphrases.add(phraseINdex);
         }
 
+        public int getSentenceNumber() {
+            return sentenceNumber;
+        }
+
         public Span getSentenceSpan() {
             return this.sentence;
         }
 
         public String getSentence() {
+            if (sentenceText == null) {
+                sentenceText = documentText.substring(sentence.getStart(), sentence.getEnd());
+            }
             return this.sentenceText;
         }
 
@@ -107,6 +141,14 @@ public class OpenNLPAnnotation {
         }
 
         public String[] getWords() {
+            if (words == null && wordStarts != null) {
+                String[] result = new String[wordStarts.length];
+                int offset = sentence.getStart();
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = documentText.substring(offset + wordStarts[i], offset + wordEnds[i]);
+                }
+                words = result;
+            }
             return words;
         }
 
@@ -114,46 +156,115 @@ public class OpenNLPAnnotation {
             this.words = words;
         }
 
-        public Span[] getWordSpans() {
-            return this.wordSpans;
+        public int getWordCount() {
+            return wordStarts != null ? wordStarts.length : (words != null ? words.length : 0);
         }
 
-        public void setWordSpans(Span[] spans) {
-            this.wordSpans = spans;
+        /**
+         * Spans of the words, built on demand from the offset columns.
+         */
+        public Span[] getWordSpans() {
+            if (wordStarts == null) {
+                return null;
+            }
+            Span[] spans = new Span[wordStarts.length];
+            for (int i = 0; i < spans.length; i++) {
+                spans[i] = new Span(wordStarts[i], wordEnds[i]);
+            }
+            return spans;
         }
 
-        public void setWordsAndSpans(Span[] spans) {
+        public void setWordSpans(Span[] spans) {
             if (spans == null) {
-                this.wordSpans = null;
-                this.words = null;
+                this.wordStarts = null;
+                this.wordEnds = null;
                 return;
             }
-            this.wordSpans = spans;
-            this.words = Arrays.asList(spans).stream()
-                    .map(span -> String.valueOf(span.getCoveredText(sentenceText)))
-                    .collect(Collectors.toList()).toArray(new String[wordSpans.length]);
+            this.wordStarts = new int[spans.length];
+            this.wordEnds = new int[spans.length];
+            for (int i = 0; i < spans.length; i++) {
+                wordStarts[i] = spans[i].getStart();
+                wordEnds[i] = spans[i].getEnd();
+            }
+        }
+
+        public void setWordsAndSpans(Span[] spans) {
+            setWordSpans(spans);
+            // word strings are created lazily by getWords()
+            this.words = null;
+        }
+
+        /*
+         * Offset columns shared with a memoized copy of the sentence; like the POS ids, they are replaced and never
+         * modified in place.
+         */
+        int[] getWordStarts() {
+            return wordStarts;
+        }
+
+        int[] getWordEnds() {
+            return wordEnds;
+        }
+
+        void setWordOffsets(int[] starts, int[] ends) {
+            this.wordStarts = starts;
+            this.wordEnds = ends;
+            this.words = null;
         }
 
         public int getWordStart(int idx) {
-            if (this.wordSpans.length > idx) {
-                return this.wordSpans[idx].getStart();
+            if (this.wordStarts.length > idx) {
+                return this.wordStarts[idx];
             }
             return -1;
         }
 
         public int getWordEnd(int idx) {
-            if (this.wordSpans.length > idx) {
-                return this.wordSpans[idx].getEnd();
+            if (this.wordEnds.length > idx) {
+                return this.wordEnds[idx];
             }
             return -1;
         }
 
         public String[] getPosTags() {
-            return this.posTags;
+            if (posTagIds == null) {
+                return null;
+            }
+            String[] posTags = new String[posTagIds.length];
+            for (int i = 0; i < posTags.length; i++) {
+                posTags[i] = posTagIds[i] >= 0 ? TagVocabulary.POS.getTag(posTagIds[i]) : null;
+            }
+            return posTags;
         }
 
         public void setPosTags(String[] posTags) {
-            this.posTags = posTags;
+            if (posTags == null) {
+                this.posTagIds = null;
+                return;
+            }
+            this.posTagIds = new int[posTags.length];
+            for (int i = 0; i < posTags.length; i++) {
+                posTagIds[i] = posTags[i] != null ? TagVocabulary.POS.getId(posTags[i]) : -1;
+            }
+        }
+
+        /**
+         * Interned id (see {@link TagVocabulary#POS}) of the POS tag of a word, -1 if unknown.
+         */
+        int getPosTagId(int idx) {
+            return posTagIds != null ? posTagIds[idx] : -1;
+        }
+
+        /**
+         * Interned ids of the POS tags of all the words, null if the sentence was not tagged. Not a copy, the array is
+         * replaced (never modified) when the tags are set.
+         */
+        int[] getPosTagIds() {
+            return posTagIds;
+        }
+
+        void setPosTagIds(int[] posTagIds) {
+            this.posTagIds = posTagIds;
         }
 
         public Span[] getChunks() {
@@ -210,10 +321,10 @@ public class OpenNLPAnnotation {
         }
 
         public void setLemmas(String[] lemmas) {
-            if (this.words == null || lemmas == null) {
+            if (getWords() == null || lemmas == null) {
                 return;
             }
-            if (this.words.length != lemmas.length) // ... something is wrong
+            if (getWordCount() != lemmas.length) // ... something is wrong
             {
                 return;
             }
@@ -235,16 +346,17 @@ public class OpenNLPAnnotation {
     class Token {
 
         private final String token;
-        private final Set<String> tokenPOS;
         private final String tokenLemmas;
-        private final Set<String> tokenNEs;
         private final List<Span> tokenSpans;
+        // tags are interned in the vocabularies of the annotation, each token only keeps the bits of the ids it carries
+        private long tokenPOS;
+        private long tokenNEs;
+        private BitSet extraTokenPOS;
+        private BitSet extraTokenNEs;
 
         public Token(String token, String lemma) {
             this.token = token;
             this.tokenLemmas = lemma;
-            this.tokenNEs = new HashSet<>();
-            this.tokenPOS = new HashSet<>();
             this.tokenSpans = new ArrayList<>();
         }
 
@@ -261,15 +373,32 @@ public class OpenNLPAnnotation {
         }
 
         public Collection<String> getTokenPOS() {
-            return tokenPOS;
+            return posVocabulary.getTags(tokenPOS, extraTokenPOS);
         }
 
         public void addTokenPOS(Collection<String> tokenPOSes) {
-            this.tokenPOS.addAll(tokenPOSes);
+            tokenPOSes.forEach(this::addTokenPOS);
         }
-        
+
         public void addTokenPOS(String tokenPOS) {
-            this.tokenPOS.add(tokenPOS);
+            if (tokenPOS == null) {
+                return;
+            }
+            addTokenPOS(posVocabulary.getId(tokenPOS));
+        }
+
+        void addTokenPOS(int id) {
+            if (id < 0) {
+                return;
+            }
+            if (id < TagVocabulary.MASK_SIZE) {
+                this.tokenPOS |= 1L << id;
+            } else {
+                if (extraTokenPOS == null) {
+                    extraTokenPOS = new BitSet();
+                }
+                extraTokenPOS.set(id);
+            }
         }
 
         public String getTokenLemmas() {
@@ -277,11 +406,28 @@ public class OpenNLPAnnotation {
         }
 
         public Collection<String> getTokenNEs() {
-            return tokenNEs;
+            return neVocabulary.getTags(tokenNEs, extraTokenNEs);
         }
 
         public void addTokenNE(String ne) {
-            this.tokenNEs.add(ne);
+            if (ne == null) {
+                return;
+            }
+            addTokenNE(neVocabulary.getId(ne));
+        }
+
+        void addTokenNE(int id) {
+            if (id < 0) {
+                return;
+            }
+            if (id < TagVocabulary.MASK_SIZE) {
+                this.tokenNEs |= 1L << id;
+            } else {
+                if (extraTokenNEs == null) {
+                    extraTokenNEs = new BitSet();
+                }
+                extraTokenNEs.set(id);
+            }
         }
 
     }
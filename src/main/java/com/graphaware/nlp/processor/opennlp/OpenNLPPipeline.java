@@ -5,6 +5,8 @@
  */
 package com.graphaware.nlp.processor.opennlp;
 
+import com.graphaware.nlp.processor.opennlp.model.LemmaDictionary;
+import com.graphaware.nlp.processor.opennlp.model.ModelRegistry;
 import com.graphaware.nlp.processor.opennlp.model.NERModelTool;
 import com.graphaware.nlp.processor.opennlp.model.SentimentModelTool;
 import com.graphaware.nlp.processor.AbstractTextProcessor;
@@ -16,21 +18,37 @@ import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Properties;
 import java.util.HashMap;
 import java.util.Arrays;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import opennlp.tools.chunker.ChunkerME;
+import java.util.stream.Stream;
 import opennlp.tools.chunker.ChunkerModel;
 import opennlp.tools.postag.POSModel;
 import opennlp.tools.postag.POSTaggerME;
@@ -41,6 +59,7 @@ import opennlp.tools.tokenize.TokenizerModel;
 import opennlp.tools.namefind.TokenNameFinderModel;
 import opennlp.tools.namefind.NameFinderME;
 import opennlp.tools.lemmatizer.DictionaryLemmatizer; // needs OpenNLP >=1.7
+import opennlp.tools.lemmatizer.Lemmatizer;
 //import opennlp.tools.lemmatizer.SimpleLemmatizer;   // for OpenNLP < 1.7
 import opennlp.tools.doccat.DoccatModel;
 import opennlp.tools.doccat.DocumentCategorizerME;
@@ -54,6 +73,10 @@ public class OpenNLPPipeline {
     protected static final Logger LOG = LoggerFactory.getLogger(OpenNLPPipeline.class);
 
     public static final String DEFAULT_BACKGROUND_SYMBOL = "O";
+    private static final int BACKGROUND_NE_TYPE = TagVocabulary.NE.getId(DEFAULT_BACKGROUND_SYMBOL);
+    // whether String.toLowerCase() maps ASCII letters to ASCII letters in the default locale
+    private static final boolean ASCII_LOWER_CASE = !Arrays.asList("tr", "az", "lt").contains(Locale.getDefault().getLanguage());
+    private static final int LOWER_CASE_CACHE_SIZE = 1024;
 
     protected static final String IMPORT_DIRECTORY = "import/";
 
@@ -73,25 +96,61 @@ public class OpenNLPPipeline {
 
     protected static final String DEFAULT_PROJECT_VALUE = "default";
 
-    protected final List<String> annotators;
-    protected final List<String> stopWords;
-
-    protected TokenizerME wordBreaker;
-    protected POSTaggerME posme;
-    protected ChunkerME chunkerME;
-    protected SentenceDetectorME sentenceDetector;
-    protected DictionaryLemmatizer lemmaDetector; // needs OpenNLP >=1.7
-
-    protected Map<String, String> customNeModels = new HashMap<>();
-    protected Map<String, String> customSentimentModels = new HashMap<>();
-
-    protected Map<String, NameFinderME> nameDetectors = new HashMap<>();
-    //protected Map<String, DocumentCategorizerME> sentimentDetectors = new HashMap<>();
-    protected DocumentCategorizerME sentimentDetector;
-
-    protected static Map<String, String> BASIC_NE_MODEL;
-
-    {
+    /**
+     * System property with the number of (word, POS) pairs whose lemma is cached in front of each lemmatizer
+     * dictionary, 0 to disable the cache.
+     */
+    public static final String LEMMA_CACHE_SIZE_PROPERTY = "com.graphaware.nlp.opennlp.lemma.cache.size";
+    private static final int DEFAULT_LEMMA_CACHE_SIZE = 16 * 1024;
+
+    protected final Set<Annotator> annotators;
+    protected final StopWordSet stopWords;
+    private final boolean stopWordsEnabled;
+    protected final int threadsNumber;
+    protected final boolean parallelNer;
+
+    public static final String ADAPTIVE_DATA_DOCUMENT = "document";
+    public static final String ADAPTIVE_DATA_BATCH = "batch";
+    // number of documents a thread's name finders may learn from before their adaptive data is cleared, 0 = no limit
+    private final int adaptiveDataDocuments;
+    private final boolean adaptiveDataPerBatch;
+    // finished annotations of recurring sentences, keyed by sentence text and striped across threads; null if disabled
+    private final StripedAnnotationCache<MemoizedSentence> sentenceMemo;
+    // whether the memo keeps the named entities: only if they don't depend on the adaptive data of the name finders
+    private final boolean memoizeEntities;
+    // ids of the batches and documents the adaptive data of the name finders is collected for
+    private final AtomicLong scopeSequence = new AtomicLong();
+
+    /*
+     * Models are loaded once per pipeline and are shared read-only between threads. The ME classes built on top of
+     * them keep per-call state and are not thread-safe, so each thread borrows its own instances from a pool owned by
+     * the pipeline (see Workers below).
+     */
+    protected SentenceModel sentenceModel;
+    protected TokenizerModel tokenizerModel;
+    protected POSModel posModel;
+    protected ChunkerModel chunkerModel;
+    protected DoccatModel sentimentModel;
+    protected Lemmatizer lemmaDetector; // needs OpenNLP >=1.7, a CachingLemmatizer shared by the pipelines using the same dictionary
+
+    protected Map<String, String> customNeModels = new ConcurrentHashMap<>();
+    protected Map<String, String> customSentimentModels = new ConcurrentHashMap<>();
+
+    protected final Map<String, TokenNameFinderModel> nameFinderModels = new ConcurrentHashMap<>();
+
+    private final List<Object> acquiredModels = Collections.synchronizedList(new ArrayList<>());
+
+    private final ForkJoinPool workerPool;
+    // annotate and categorize calls in progress, the worker pool is used only when a single one is running
+    private final AtomicInteger activeCalls = new AtomicInteger();
+    private final String fingerprint;
+
+    // sets of ME instances, each one used by a single thread at a time
+    private final InstancePool<Workers> workers;
+
+    protected static final Map<String, String> BASIC_NE_MODEL;
+
+    static {
         BASIC_NE_MODEL = new HashMap<>();
         BASIC_NE_MODEL.put(DEFAULT_PROJECT_VALUE + "-person", "en-ner-person.bin");
         BASIC_NE_MODEL.put(DEFAULT_PROJECT_VALUE + "-date", "en-ner-date.bin");
@@ -104,64 +163,183 @@ public class OpenNLPPipeline {
 
     public OpenNLPPipeline(Properties properties) {
         findModelFiles(IMPORT_DIRECTORY);
-        this.annotators = Arrays.asList(properties.getProperty("annotators", "").split(",")).stream().map(str -> str.trim()).collect(Collectors.toList());
-        this.stopWords = Arrays.asList(properties.getProperty("stopword", "").split(",")).stream().map(str -> str.trim().toLowerCase()).collect(Collectors.toList());
-        init(properties);
+        this.annotators = Collections.unmodifiableSet(checkAnnotators(Annotator.parse(properties.getProperty("annotators", ""))));
+        this.stopWords = StopWordSet.of(Arrays.asList(properties.getProperty("stopword", "").split(",")));
+        this.stopWordsEnabled = annotators.contains(Annotator.STOPWORD);
+        this.threadsNumber = parseThreadsNumber(properties.getProperty("threads", "1"));
+        this.parallelNer = Boolean.parseBoolean(properties.getProperty("parallelNER", "false"));
+        String adaptiveData = properties.getProperty("adaptiveData", ADAPTIVE_DATA_DOCUMENT).trim();
+        this.adaptiveDataPerBatch = adaptiveData.equalsIgnoreCase(ADAPTIVE_DATA_BATCH);
+        this.adaptiveDataDocuments = adaptiveDataPerBatch ? 0 : parseAdaptiveDataDocuments(adaptiveData);
+        long sentenceCacheSize = parseSentenceCacheSize(properties.getProperty("sentenceCache", "0"));
+        // boilerplate must not be evicted by a stream of unique sentences, so new entries have to earn their place
+        this.sentenceMemo = sentenceCacheSize > 0
+                ? new StripedAnnotationCache<>(sentenceCacheSize, AnnotationCache.EvictionPolicy.TINY_LFU, MemoizedSentence::estimateBytes)
+                : null;
+        // sentences of one document are annotated in parallel only if more than one thread is requested,
+        // the NER models of a sentence can run in parallel even for a single threaded pipeline
+        if (threadsNumber > 1) {
+            this.workerPool = new ForkJoinPool(threadsNumber);
+        } else if (parallelNer) {
+            this.workerPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        } else {
+            this.workerPool = null;
+        }
+        // enough idle sets for the workers and a few callers, more are created (and dropped) on demand
+        this.workers = new InstancePool<>(Workers::new, Math.max(threadsNumber, Runtime.getRuntime().availableProcessors()));
+        try {
+            init(properties);
+        } catch (RuntimeException ex) {
+            // give back the models loaded so far
+            close();
+            throw ex;
+        }
+        this.memoizeEntities = !annotators.contains(Annotator.NER)
+                || nameFinderModels.values().stream().allMatch(SharedFeatureNameFinder::isStateless);
+        this.fingerprint = computeFingerprint();
     }
 
-    private void init(Properties properties) {
+    private static Set<Annotator> checkAnnotators(Set<Annotator> annotators) {
+        annotators.forEach(annotator -> annotator.getRequires().stream()
+                .filter(required -> !annotators.contains(required))
+                .forEach(required -> LOG.warn("Annotator " + annotator.getName() + " requires " + required.getName() + ", it will have no effect")));
+        return annotators;
+    }
+
+    private static int parseAdaptiveDataDocuments(String value) {
+        if (value.equalsIgnoreCase(ADAPTIVE_DATA_DOCUMENT)) {
+            return 1;
+        }
+        try {
+            int documents = Integer.parseInt(value);
+            if (documents > 0) {
+                return documents;
+            }
+        } catch (NumberFormatException ex) {
+            // reported below
+        }
+        throw new RuntimeException("Invalid value for property adaptiveData: " + value + ", expected "
+                + ADAPTIVE_DATA_DOCUMENT + ", " + ADAPTIVE_DATA_BATCH + " or a positive number of documents");
+    }
+
+    private static long parseSentenceCacheSize(String value) {
+        try {
+            long size = AnnotationCache.parseSize(value);
+            if (size >= 0) {
+                return size;
+            }
+        } catch (NumberFormatException ex) {
+            // reported below
+        }
+        throw new RuntimeException("Invalid value for property sentenceCache: " + value + ", expected a size in bytes (e.g. 16m)");
+    }
+
+    private static int getLemmaCacheSize() {
+        String value = System.getProperty(LEMMA_CACHE_SIZE_PROPERTY);
+        if (value == null || value.trim().isEmpty()) {
+            return DEFAULT_LEMMA_CACHE_SIZE;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException ex) {
+            LOG.warn("Invalid value for " + LEMMA_CACHE_SIZE_PROPERTY + ": " + value + ", using " + DEFAULT_LEMMA_CACHE_SIZE);
+            return DEFAULT_LEMMA_CACHE_SIZE;
+        }
+    }
+
+    private static int parseThreadsNumber(String value) {
         try {
-            setSenteceSplitter(properties);
-            setTokenizer(properties);
-            setPosTagger(properties);
-            setChuncker(properties);
-            loadNamedEntitiesFinders(properties);
-            setLemmatizer(properties);
-            setCategorizer(properties);
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException ex) {
+            LOG.warn("Invalid value for property threads: " + value + ", using a single thread.");
+            return 1;
+        }
+    }
+
+    private void init(Properties properties) {
+        // sentence detection is always needed, other models are loaded only if some annotator is going to use them
+        List<ModelLoading> loaders = new ArrayList<>();
+        loaders.add(() -> setSenteceSplitter(properties));
+        if (annotators.contains(Annotator.TOKENIZE)) {
+            loaders.add(() -> setTokenizer(properties));
+        }
+        if (annotators.contains(Annotator.POS)) {
+            loaders.add(() -> setPosTagger(properties));
+        }
+        if (annotators.contains(Annotator.RELATION)) {
+            loaders.add(() -> setChuncker(properties));
+        }
+        if (annotators.contains(Annotator.NER)) {
+            loaders.addAll(getNamedEntitiesFinderLoaders(properties));
+        }
+        if (annotators.contains(Annotator.LEMMA)) {
+            loaders.add(() -> setLemmatizer(properties));
+        }
+        if (annotators.contains(Annotator.SENTIMENT)) {
+            loaders.add(() -> setCategorizer(properties));
+        }
+        loadModels(loaders);
+    }
 
-        } catch (IOException e) {
-            LOG.error("Could not initialize OpenNLP models: " + e.getMessage());
-            throw new RuntimeException("Could not initialize OpenNLP models", e);
+    /*
+     * Models are independent of each other, so they are deserialized concurrently; the pipeline is ready once the
+     * slowest one is loaded.
+     */
+    private void loadModels(List<ModelLoading> loaders) {
+        CompletableFuture<?>[] loading = loaders.stream()
+                .map(loader -> CompletableFuture.runAsync(() -> {
+                    try {
+                        loader.load();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(loading).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            LOG.error("Could not initialize OpenNLP models: " + cause.getMessage());
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Could not initialize OpenNLP models", cause);
         }
     }
 
+    @FunctionalInterface
+    private interface ModelLoading {
+
+        void load() throws IOException;
+    }
+
     private void setChuncker(Properties properties) throws FileNotFoundException {
-        InputStream is = getInputStream(properties, PROPERTY_PATH_CHUNKER_MODEL, PROPERTY_DEFAULT_CHUNKER_MODEL);
-        ChunkerModel chunkerModel = loadModel(ChunkerModel.class, is);
-        closeInputStream(is, PROPERTY_PATH_CHUNKER_MODEL);
-        chunkerME = new ChunkerME(chunkerModel);
+        chunkerModel = acquireModel(ChunkerModel.class, getModelResource(properties, PROPERTY_PATH_CHUNKER_MODEL, PROPERTY_DEFAULT_CHUNKER_MODEL));
     }
 
     private void setPosTagger(Properties properties) throws FileNotFoundException {
-        InputStream is = getInputStream(properties, PROPERTY_PATH_POS_TAGGER_MODEL, PROPERTY_DEFAULT_POS_TAGGER_MODEL);
-        POSModel pm = loadModel(POSModel.class, is);
-        closeInputStream(is, PROPERTY_PATH_POS_TAGGER_MODEL);
-        posme = new POSTaggerME(pm);
+        posModel = acquireModel(POSModel.class, getModelResource(properties, PROPERTY_PATH_POS_TAGGER_MODEL, PROPERTY_DEFAULT_POS_TAGGER_MODEL));
     }
 
     private void setTokenizer(Properties properties) throws FileNotFoundException {
-        InputStream is = getInputStream(properties, PROPERTY_PATH_TOKENIZER_MODEL, PROPERTY_DEFAULT_TOKENIZER_MODEL);
-        TokenizerModel tm = loadModel(TokenizerModel.class, is);
-        closeInputStream(is, PROPERTY_PATH_TOKENIZER_MODEL);
-        wordBreaker = new TokenizerME(tm);
+        tokenizerModel = acquireModel(TokenizerModel.class, getModelResource(properties, PROPERTY_PATH_TOKENIZER_MODEL, PROPERTY_DEFAULT_TOKENIZER_MODEL));
     }
 
     private void setSenteceSplitter(Properties properties) throws FileNotFoundException {
-        InputStream is = getInputStream(properties, PROPERTY_PATH_SENTENCE_MODEL, PROPERTY_DEFAULT_SENTENCE_MODEL);
-        SentenceModel sentenceModel = loadModel(SentenceModel.class, is);
-        closeInputStream(is, PROPERTY_PATH_SENTENCE_MODEL);
-        sentenceDetector = new SentenceDetectorME(sentenceModel);
+        sentenceModel = acquireModel(SentenceModel.class, getModelResource(properties, PROPERTY_PATH_SENTENCE_MODEL, PROPERTY_DEFAULT_SENTENCE_MODEL));
     }
 
-    private void loadNamedEntitiesFinders(Properties properties) throws FileNotFoundException {
+    private List<ModelLoading> getNamedEntitiesFinderLoaders(Properties properties) {
+        List<ModelLoading> loaders = new ArrayList<>();
         // Default NE models
         BASIC_NE_MODEL.entrySet().stream().forEach((item) -> {
-            InputStream is = getInputStream(properties, item.getKey(), item.getValue());
-            if (!(is == null)) {
-                TokenNameFinderModel nameModel = loadModel(TokenNameFinderModel.class, is);
-                closeInputStream(is, item.getKey());
-                nameDetectors.put(item.getKey(), new NameFinderME(nameModel));
-            }
+            loaders.add(() -> {
+                URL resource = getModelResource(properties, item.getKey(), item.getValue());
+                if (!(resource == null)) {
+                    TokenNameFinderModel nameModel = acquireModel(TokenNameFinderModel.class, resource);
+                    nameFinderModels.put(item.getKey(), nameModel);
+                }
+            });
         });
 
         // Custom NE models (in the `import/` dir of the Neo4j installation)
@@ -172,35 +350,40 @@ public class OpenNLPPipeline {
                     LOG.error("Custom NE model " + key + " not found!");
                     throw new RuntimeException("Custom NE model " + key + " not found!");
                 }
-                LOG.info("Extracting custom NER model: " + key);
-                InputStream is = new FileInputStream(new File(customNeModels.get(key)));
-                TokenNameFinderModel nameModel = loadModel(TokenNameFinderModel.class, is);
-                closeInputStream(is, key);
-                nameDetectors.put(key, new NameFinderME(nameModel));
-                LOG.info("Custom NER model " + key + " loaded for this pipeline.");
+                String path = customNeModels.get(key);
+                loaders.add(() -> {
+                    LOG.info("Extracting custom NER model: " + key);
+                    TokenNameFinderModel nameModel = acquireModel(TokenNameFinderModel.class, new File(path).toURI().toURL());
+                    nameFinderModels.put(key, nameModel);
+                    LOG.info("Custom NER model " + key + " loaded for this pipeline.");
+                });
             }
         }
+        return loaders;
     }
 
     private void setLemmatizer(Properties properties) throws FileNotFoundException, IOException {
-        InputStream is = getInputStream(properties, PROPERTY_PATH_LEMMATIZER_MODEL, PROPERTY_DEFAULT_LEMMATIZER_MODEL);
-        lemmaDetector = new DictionaryLemmatizer(is);
-        closeInputStream(is, PROPERTY_PATH_LEMMATIZER_MODEL);
+        String path = getModelPath(properties, PROPERTY_PATH_LEMMATIZER_MODEL, PROPERTY_DEFAULT_LEMMATIZER_MODEL);
+        Path file = LemmaDictionary.isCompiled(path) ? getModelFile(path) : null;
+        if (file != null) {
+            // compiled dictionaries are mapped, their pages are shared by all the pipelines and processes using the file
+            lemmaDetector = acquire(file, (mapped) -> new CachingLemmatizer(LemmaDictionary.map(mapped), getLemmaCacheSize()));
+            return;
+        }
+        URL resource = getModelResource(properties, PROPERTY_PATH_LEMMATIZER_MODEL, PROPERTY_DEFAULT_LEMMATIZER_MODEL);
+        lemmaDetector = acquire(path, resource, (in) -> new CachingLemmatizer(
+                LemmaDictionary.isCompiled(path) ? LemmaDictionary.read(in) : new DictionaryLemmatizer(in), getLemmaCacheSize()));
     }
 
     private void setCategorizer(Properties properties) throws FileNotFoundException {
         // Default sentiment model
         if (!properties.containsKey("customSentiment")) {
-            InputStream is = getInputStream(properties, PROPERTY_PATH_SENTIMENT_MODEL, PROPERTY_DEFAULT_SENTIMENT_MODEL);
-            if (is != null) {
-                DoccatModel doccatModel = loadModel(DoccatModel.class, is);
-                closeInputStream(is, PROPERTY_PATH_SENTIMENT_MODEL);
-                //sentimentDetectors.put(DEFAULT_PROJECT_VALUE, new DocumentCategorizerME(doccatModel));
-                sentimentDetector = new DocumentCategorizerME(doccatModel);
+            URL resource = getModelResource(properties, PROPERTY_PATH_SENTIMENT_MODEL, PROPERTY_DEFAULT_SENTIMENT_MODEL);
+            if (resource != null) {
+                sentimentModel = acquireModel(DoccatModel.class, resource);
             } else {
                 LOG.warn("No default sentiment detector available (input stream is null).");
-                //sentimentDetectors.put(DEFAULT_PROJECT_VALUE, null);
-                sentenceDetector = null;
+                sentimentModel = null;
             }
         }
         // Custom sentiment model (currently only one is possible)
@@ -212,15 +395,11 @@ public class OpenNLPPipeline {
                 throw new RuntimeException("Custom sentiment model " + customModel + " not found!");
             }
             try {
-                InputStream is = new FileInputStream(new File(customSentimentModels.get(customModel)));
-                if (is == null) {
-                    LOG.error("Custom sentiment model: input stream is null");
-                    return;
+                File file = new File(customSentimentModels.get(customModel));
+                if (!file.isFile()) {
+                    throw new FileNotFoundException(file.getPath());
                 }
-                DoccatModel doccatModel = loadModel(DoccatModel.class, is);
-                closeInputStream(is, customSentimentModels.get(customModel));
-                //sentimentDetectors.put(customModel, new DocumentCategorizerME(doccatModel));
-                sentimentDetector = new DocumentCategorizerME(doccatModel);
+                sentimentModel = acquireModel(DoccatModel.class, file.toURI().toURL());
                 LOG.info("Custom sentiment model " + customModel + " loaded for this pipeline.");
             } catch (IOException ex) {
                 LOG.error("Error while opening file " + customSentimentModels.get(customModel), ex);
@@ -229,116 +408,378 @@ public class OpenNLPPipeline {
     }
 
     public void annotate(OpenNLPAnnotation document) {
+        annotate(document, newBatch());
+    }
+
+    /**
+     * Annotates a document of a batch started with {@link #newBatch()}: with the {@link #ADAPTIVE_DATA_BATCH} scope,
+     * the name finders learn from the documents of the same batch only.
+     */
+    public void annotate(OpenNLPAnnotation document, long batch) {
         String text = document.getText();
+        activeCalls.incrementAndGet();
+        Workers documentWorkers = workers.borrow();
         try {
-            Span sentences[] = sentenceDetector.sentPosDetect(text);
+            Span sentences[] = documentWorkers.getSentenceDetector().sentPosDetect(text);
             document.setSentences(sentences);
-            document.getSentences().stream()
-                    .forEach((OpenNLPAnnotation.Sentence sentence) -> {
-                        if (annotators.contains("tokenize") && wordBreaker != null) {
-                            Span[] wordSpans = wordBreaker.tokenizePos(sentence.getSentence());
-                            if (wordSpans != null && wordSpans.length > 0) {
-                                sentence.setWordsAndSpans(wordSpans);
-
-                                if (annotators.contains("pos") && posme != null) {
-                                    String[] posTags = posme.tag(sentence.getWords());
-                                    sentence.setPosTags(posTags);
-                                    if (annotators.contains("lemma")) {
-                                        String[] finLemmas = lemmaDetector.lemmatize(sentence.getWords(), posTags);
-                                        sentence.setLemmas(finLemmas);
-                                    }
-
-                                    //FIXME: this is wrong
-//                        if (annotators.contains("relation")) {
-//                            Span[] chunks = chunkerME.chunkAsSpans(sentence.getWords(), posTags);
-//                            sentence.setChunks(chunks);
-//                            LOG.info("Found " + chunks.length + " phrases.");
-//                            String[] chunkStrings = Span.spansToStrings(chunks, sentence.getWords());
-//                            sentence.setChunkStrings(chunkStrings);
-//                            List<String> chunkSentiments = new ArrayList<>();
-//                            for (int i = 0; i < chunks.length; i++) {
-//                                sentence.addPhraseIndex(i);
-//                            }
-//                            if (!chunkSentiments.isEmpty()) {
-//                                sentence.setChunkSentiments(chunkSentiments.toArray(new String[chunkSentiments.size()]));
-//                            }
-//                        } 
-                                }
-
-                                Map<Integer, List<Span>> nerOccurrences = new HashMap<>();
-                                if (annotators.contains("ner") && sentence.getWords() != null) {
-
-                                    // Named Entities identification; needs to be performed after lemmas and POS (see implementation of Sentence.addNamedEntities())
-                                    BASIC_NE_MODEL.keySet().stream().forEach((modelKey) -> {
-                                        if (!nameDetectors.containsKey(modelKey)) {
-                                            LOG.warn("NER model with key " + modelKey + " not available.");
-                                        } else {
-                                            List<Span> ners = Arrays.asList(nameDetectors.get(modelKey).find(sentence.getWords()));
-                                            addNer(ners, nerOccurrences);
-                                        }
-                                    });
-
-                                    if (!customNeModels.isEmpty()) {
-                                        for (String key : customNeModels.keySet()) {
-                                            if (!nameDetectors.containsKey(key)) {
-                                                LOG.warn("Custom NER model with key " + key + " not available.");
-                                                continue;
-                                            }
-                                            if (key.split("-").length == 0) {
-                                                continue;
-                                            }
-                                            LOG.info("Running custom NER: " + key);
-                                            List ners = Arrays.asList(nameDetectors.get(key).find(sentence.getWords()));
-                                            addNer(ners, nerOccurrences);
-                                        }
-                                    }
-                                }
-                                processTokens(sentence, nerOccurrences);
-                            }
-                        }
-                        if (sentence.getWords() != null && sentence.getWords().length > 0) {
-                            if (annotators.contains("sentiment") && sentimentDetector != null) {
-                                double[] outcomes = sentimentDetector.categorize(sentence.getWords());
-                                String category = sentimentDetector.getBestCategory(outcomes);
-                                if (Arrays.stream(outcomes).max().getAsDouble() < document.getSentimentProb()) {
-                                    category = "2";
-                                }
-                                sentence.setSentiment(category);
-                                LOG.info("Sentiment results: sentence = " + sentence.getSentence() + "; category = " + category + "; outcomes = " + Arrays.toString(outcomes));
-                            }
-                        }
-                    });
-
-//            if (annotators.contains("ner")) {
-//                for (String key : BASIC_NE_MODEL.keySet()) {
-//                    if (nameDetectors.containsKey(key)) {
-//                        nameDetectors.get(key).clearAdaptiveData();
-//                    }
-//                }
-//                if (customProject != null) {
-//                    for (String key : customNeModels.keySet()) {
-//                        if (nameDetectors.containsKey(key)) {
-//                            nameDetectors.get(key).clearAdaptiveData();
-//                        }
-//                    }
-//                }
-//            }
+            List<OpenNLPAnnotation.Sentence> documentSentences = document.getSentences();
+            // identifies the batch or the document for the adaptive data of the name finders
+            final long scope = adaptiveDataPerBatch ? batch : scopeSequence.incrementAndGet();
+            if (threadsNumber > 1 && documentSentences.size() > 1) {
+                // sentences are independent of each other, results are stored in the (already ordered) Sentence objects
+                runInParallel(() -> {
+                    documentSentences.parallelStream().forEach((sentence) -> annotateSentence(sentence, document, scope));
+                    return null;
+                }, () -> {
+                    documentSentences.forEach((sentence) -> annotateSentence(sentence, document, documentWorkers, scope));
+                    return null;
+                });
+            } else {
+                documentSentences.forEach((sentence) -> annotateSentence(sentence, document, documentWorkers, scope));
+            }
         } catch (Exception ex) {
             LOG.error("Error processing sentence for text: " + text, ex);
             throw new RuntimeException("Error processing sentence for text: " + text, ex);
+        } finally {
+            workers.release(documentWorkers);
+            activeCalls.decrementAndGet();
+        }
+    }
+
+    /*
+     * Runs the parallel version of a task on the worker pool of this pipeline. The sequential version is used when the
+     * pipeline has no pool, when the pool has been shut down by close() in the meantime, and when the caller doesn't
+     * have the cores to itself: it is a worker of another pool (batch annotation), or other calls are in progress.
+     * Fanning out would then funnel all the callers through the threads of this pool, the caller threads already keep
+     * the cores busy.
+     */
+    private <T> T runInParallel(Supplier<T> parallel, Supplier<T> sequential) {
+        if (workerPool == null) {
+            return sequential.get();
+        }
+        ForkJoinPool current = ForkJoinTask.getPool();
+        if (current == workerPool) {
+            // already running on one of the workers, parallel streams fork into the same pool
+            return parallel.get();
+        }
+        if (current != null || activeCalls.get() > 1) {
+            return sequential.get();
+        }
+        try {
+            return workerPool.submit(parallel::get).get();
+        } catch (RejectedExecutionException ex) {
+            LOG.debug("Worker pool not available, running sequentially");
+            return sequential.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for parallel annotation", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RuntimeException("Error during parallel annotation", ex.getCause());
+        }
+    }
+
+    private void annotateSentence(OpenNLPAnnotation.Sentence sentence, OpenNLPAnnotation document, long scope) {
+        Workers sentenceWorkers = workers.borrow();
+        try {
+            annotateSentence(sentence, document, sentenceWorkers, scope);
+        } finally {
+            workers.release(sentenceWorkers);
+        }
+    }
+
+    private void annotateSentence(OpenNLPAnnotation.Sentence sentence, OpenNLPAnnotation document, Workers workers, long scope) {
+        MemoizedSentence memo = sentenceMemo != null ? sentenceMemo.get(sentence.getSentence()) : null;
+        NamedEntitySpans namedEntities;
+        if (memo == null) {
+            namedEntities = analyzeSentence(sentence, workers, scope);
+        } else {
+            namedEntities = memo.restore(sentence);
+            if (namedEntities != null && !memoizeEntities) {
+                // the entities depend on what the name finders learned earlier in this document or batch
+                namedEntities = findNamedEntities(sentence, workers, scope);
+            }
+        }
+        if (namedEntities != null) {
+            processTokens(sentence, namedEntities, document.getTokenEmitter(), workers);
+        }
+        if (sentence.getWords() != null && sentence.getWords().length > 0 && annotators.contains(Annotator.SENTIMENT)) {
+            String category = memo != null ? memo.getSentiment(document.getSentimentProb()) : null;
+            final DocumentCategorizerME sentimentDetector = category == null ? workers.getSentimentDetector() : null;
+            if (sentimentDetector != null) {
+                category = categorize(sentimentDetector, sentence.getSentence(), sentence.getWords(), document.getSentimentProb());
+            }
+            if (category != null) {
+                sentence.setSentiment(category);
+            }
+        }
+        if (sentenceMemo != null && memo == null) {
+            NamedEntitySpans memoizedEntities = memoizeEntities || namedEntities == null ? namedEntities : new NamedEntitySpans();
+            sentenceMemo.put(sentence.getSentence(), new MemoizedSentence(sentence, memoizedEntities, document.getSentimentProb()));
         }
     }
 
-    protected void addNer(List<Span> ners, Map<Integer, List<Span>> nerOccurrences) {
-        if (ners != null && !ners.isEmpty()) {
-            ners.stream().forEach((ner) -> {
-                List<Span> currentNer = nerOccurrences.get(ner.getStart());
-                if (currentNer == null) {
-                    currentNer = new ArrayList<>();
-                    nerOccurrences.put(ner.getStart(), currentNer);
+    /*
+     * Runs the models on a sentence: words, POS tags, lemmas and named entities (null if the sentence has no words).
+     */
+    private NamedEntitySpans analyzeSentence(OpenNLPAnnotation.Sentence sentence, Workers workers, long scope) {
+        final TokenizerME wordBreaker = workers.getTokenizer();
+        final POSTaggerME posme = workers.getPosTagger();
+        if (annotators.contains(Annotator.TOKENIZE) && wordBreaker != null) {
+            Span[] wordSpans = wordBreaker.tokenizePos(sentence.getSentence());
+            if (wordSpans != null && wordSpans.length > 0) {
+                sentence.setWordsAndSpans(wordSpans);
+
+                if (annotators.contains(Annotator.POS) && posme != null) {
+                    String[] posTags = posme.tag(sentence.getWords());
+                    sentence.setPosTags(posTags);
+                    if (annotators.contains(Annotator.LEMMA)) {
+                        sentence.setLemmas(lemmatize(sentence, posTags));
+                    }
+
+                    //FIXME: this is wrong
+//                    if (annotators.contains("relation")) {
+//                        Span[] chunks = getChunker().chunkAsSpans(sentence.getWords(), posTags);
+//                        sentence.setChunks(chunks);
+//                        LOG.info("Found " + chunks.length + " phrases.");
+//                        String[] chunkStrings = Span.spansToStrings(chunks, sentence.getWords());
+//                        sentence.setChunkStrings(chunkStrings);
+//                        List<String> chunkSentiments = new ArrayList<>();
+//                        for (int i = 0; i < chunks.length; i++) {
+//                            sentence.addPhraseIndex(i);
+//                        }
+//                        if (!chunkSentiments.isEmpty()) {
+//                            sentence.setChunkSentiments(chunkSentiments.toArray(new String[chunkSentiments.size()]));
+//                        }
+//                    }
                 }
-                currentNer.add(ner);
-            });
+
+                // Named Entities identification; needs to be performed after lemmas and POS (see implementation of Sentence.addNamedEntities())
+                return findNamedEntities(sentence, workers, scope);
+            }
+        }
+        return null;
+    }
+
+    private NamedEntitySpans findNamedEntities(OpenNLPAnnotation.Sentence sentence, Workers workers, long scope) {
+        NamedEntitySpans namedEntities = new NamedEntitySpans();
+        if (annotators.contains(Annotator.NER) && sentence.getWords() != null) {
+            findNamedEntities(sentence.getWords(), workers, scope).forEach(namedEntities::add);
+        }
+        return namedEntities;
+    }
+
+    private String[] lemmatize(OpenNLPAnnotation.Sentence sentence, String[] posTags) {
+        if (lemmaDetector instanceof CachingLemmatizer) {
+            // POS tags are already interned by the sentence, the cache is looked up without building any key
+            return ((CachingLemmatizer) lemmaDetector).lemmatize(sentence.getWords(), posTags, sentence.getPosTagIds());
+        }
+        return lemmaDetector.lemmatize(sentence.getWords(), posTags);
+    }
+
+    /**
+     * Sentiment of already split sentences: only tokenization and categorization are performed, sentence detection and
+     * the other annotators are skipped. Sentences are categorized in parallel when the pipeline has a worker pool
+     * that no other call is using.
+     *
+     * @return sentiment category for each sentence, in the same order; null if it could not be computed
+     */
+    public List<String> categorize(List<String> sentences, double probabilityThreshold) {
+        if (sentimentModel == null || tokenizerModel == null) {
+            LOG.warn("Sentiment can't be computed: pipeline has no sentiment or tokenizer model");
+            return sentences.stream().map(sentence -> (String) null).collect(Collectors.toList());
+        }
+        if (sentences.size() <= 1) {
+            return categorizeSentences(sentences.stream(), probabilityThreshold);
+        }
+        activeCalls.incrementAndGet();
+        try {
+            return runInParallel(() -> categorizeSentences(sentences.parallelStream(), probabilityThreshold),
+                    () -> categorizeSentences(sentences.stream(), probabilityThreshold));
+        } finally {
+            activeCalls.decrementAndGet();
+        }
+    }
+
+    private List<String> categorizeSentences(Stream<String> sentences, double probabilityThreshold) {
+        return sentences.map(sentence -> {
+            Workers sentenceWorkers = workers.borrow();
+            try {
+                String[] words = sentenceWorkers.getTokenizer().tokenize(sentence);
+                if (words == null || words.length == 0) {
+                    return null;
+                }
+                return categorize(sentenceWorkers.getSentimentDetector(), sentence, words, probabilityThreshold);
+            } finally {
+                workers.release(sentenceWorkers);
+            }
+        }).collect(Collectors.toList());
+    }
+
+    private String categorize(DocumentCategorizerME sentimentDetector, String sentence, String[] words, double probabilityThreshold) {
+        double[] outcomes = sentimentDetector.categorize(words);
+        String category = sentimentDetector.getBestCategory(outcomes);
+        if (Arrays.stream(outcomes).max().getAsDouble() < probabilityThreshold) {
+            category = "2";
+        }
+        LOG.info("Sentiment results: sentence = " + sentence + "; category = " + category + "; outcomes = " + Arrays.toString(outcomes));
+        return category;
+    }
+
+    /*
+     * Runs every available NER model on the sentence. The results are returned in the order of the models (default ones
+     * first, then the custom ones), whether the models ran sequentially or in parallel.
+     */
+    private List<Span[]> findNamedEntities(String[] words, Workers workers, long scope) {
+        List<String> modelKeys = getNerModelKeys();
+        if (parallelNer && modelKeys.size() > 1) {
+            return runInParallel(() -> findNamedEntitiesInParallel(modelKeys, words, scope), () -> findNamedEntitiesSequentially(modelKeys, words, workers, scope));
+        }
+        return findNamedEntitiesSequentially(modelKeys, words, workers, scope);
+    }
+
+    private List<Span[]> findNamedEntitiesSequentially(List<String> modelKeys, String[] words, Workers workers, long scope) {
+        final Map<String, NameFinderME> nameDetectors = workers.getNameDetectors(scope);
+        return modelKeys.stream()
+                .map(key -> nameDetectors.get(key).find(words))
+                .collect(Collectors.toList());
+    }
+
+    private List<Span[]> findNamedEntitiesInParallel(List<String> modelKeys, String[] words, long scope) {
+        // every task borrows its own NameFinderME instances
+        return modelKeys.parallelStream()
+                .map(key -> {
+                    Workers modelWorkers = workers.borrow();
+                    try {
+                        return modelWorkers.getNameDetectors(scope).get(key).find(words);
+                    } finally {
+                        workers.release(modelWorkers);
+                    }
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Starts a batch of documents, the returned id is passed to {@link #annotate(OpenNLPAnnotation, long)} for each
+     * document of the batch. Batches of concurrent callers don't share adaptive data.
+     */
+    public long newBatch() {
+        return scopeSequence.incrementAndGet();
+    }
+
+    private List<String> getNerModelKeys() {
+        List<String> modelKeys = new ArrayList<>();
+        BASIC_NE_MODEL.keySet().stream().forEach((modelKey) -> {
+            if (!nameFinderModels.containsKey(modelKey)) {
+                LOG.warn("NER model with key " + modelKey + " not available.");
+            } else {
+                modelKeys.add(modelKey);
+            }
+        });
+
+        if (!customNeModels.isEmpty()) {
+            for (String key : customNeModels.keySet()) {
+                if (!nameFinderModels.containsKey(key)) {
+                    LOG.warn("Custom NER model with key " + key + " not available.");
+                    continue;
+                }
+                if (key.split("-").length == 0) {
+                    continue;
+                }
+                LOG.info("Running custom NER: " + key);
+                modelKeys.add(key);
+            }
+        }
+        return modelKeys;
+    }
+
+    /*
+     * One set of ME instances, used by a single thread at a time. Instances are created on first use, so a set borrowed
+     * only to categorize sentences doesn't build the name finders. The name finders of a set compute the token features
+     * their models have in common once per sentence, and keep the state of their adaptive data.
+     */
+    private final class Workers {
+
+        private SentenceDetectorME sentenceDetector;
+        private TokenizerME wordBreaker;
+        private POSTaggerME posme;
+        private DocumentCategorizerME sentimentDetector;
+        private Map<String, NameFinderME> nameDetectors;
+        // batch or document the adaptive data was last collected for
+        private long scope = -1;
+        private int documents;
+        // lower-cased forms of recent words, so that the frequent capitalized ones are not copied again and again
+        private final String[] lowerCaseKeys = new String[LOWER_CASE_CACHE_SIZE];
+        private final String[] lowerCaseValues = new String[LOWER_CASE_CACHE_SIZE];
+
+        SentenceDetectorME getSentenceDetector() {
+            if (sentenceDetector == null && sentenceModel != null) {
+                sentenceDetector = new SentenceDetectorME(sentenceModel);
+            }
+            return sentenceDetector;
+        }
+
+        TokenizerME getTokenizer() {
+            if (wordBreaker == null && tokenizerModel != null) {
+                wordBreaker = new TokenizerME(tokenizerModel);
+            }
+            return wordBreaker;
+        }
+
+        POSTaggerME getPosTagger() {
+            if (posme == null && posModel != null) {
+                posme = new POSTaggerME(posModel);
+            }
+            return posme;
+        }
+
+        DocumentCategorizerME getSentimentDetector() {
+            if (sentimentDetector == null && sentimentModel != null) {
+                sentimentDetector = new DocumentCategorizerME(sentimentModel);
+            }
+            return sentimentDetector;
+        }
+
+        String toLowerCase(String word) {
+            int slot = word.hashCode() & (LOWER_CASE_CACHE_SIZE - 1);
+            if (word.equals(lowerCaseKeys[slot])) {
+                return lowerCaseValues[slot];
+            }
+            String lowerCase = word.toLowerCase();
+            if (lowerCase != word) {
+                lowerCaseKeys[slot] = word;
+                lowerCaseValues[slot] = lowerCase;
+            }
+            return lowerCase;
+        }
+
+        /*
+         * Name finders of this set, with their adaptive data cleared if the configured scope is over.
+         */
+        Map<String, NameFinderME> getNameDetectors(long scope) {
+            if (nameDetectors == null) {
+                nameDetectors = new HashMap<>();
+                SharedFeatureNameFinder.Ensemble ensemble = new SharedFeatureNameFinder.Ensemble();
+                nameFinderModels.forEach((key, model) -> nameDetectors.put(key, ensemble.createNameFinder(model)));
+            }
+            if (this.scope != scope) {
+                this.scope = scope;
+                if (adaptiveDataPerBatch) {
+                    // another batch, the set may have been used by a concurrent caller in between
+                    clearAdaptiveData();
+                } else if (adaptiveDataDocuments > 0 && ++documents > adaptiveDataDocuments) {
+                    clearAdaptiveData();
+                    documents = 1;
+                }
+            }
+            return nameDetectors;
+        }
+
+        private void clearAdaptiveData() {
+            nameDetectors.values().forEach(NameFinderME::clearAdaptiveData);
+            documents = 0;
         }
     }
 
@@ -436,66 +877,145 @@ public class OpenNLPPipeline {
         return result;
     }
 
-    private void processTokens(OpenNLPAnnotation.Sentence sentence, Map<Integer, List<Span>> nerOccurrences) {
+    private void processTokens(OpenNLPAnnotation.Sentence sentence, NamedEntitySpans namedEntities, TokenEmitter emitter, Workers workers) {
         if (sentence.getWords() == null) {
             return;
         }
+        // with an emitter tokens are handed over directly, otherwise they are collected in the sentence
+        TokenEmitter.SentenceTokens sentenceTokens = emitter != null ? emitter.startSentence(sentence) : null;
         String[] words = sentence.getWords();
         String[] lemmas = sentence.getLemmas();
-        String[] posTags = sentence.getPosTags();
-        Span[] wordSpans = sentence.getWordSpans();
+        // reused for every named entity of the sentence
+        StringBuilder value = new StringBuilder();
+        StringBuilder lemma = new StringBuilder();
 
+        // entities are sorted by start word, a single cursor walks them along with the words
+        int entity = 0;
+        int entityCount = namedEntities != null ? namedEntities.size() : 0;
         for (int i = 0; i < words.length; i++) {
-            if (nerOccurrences != null && nerOccurrences.containsKey(i)) {
-                List<Span> ners = nerOccurrences.get(i);
-                final int startSpan = wordSpans[i].getStart();
-                AtomicInteger index = new AtomicInteger(i);
-                ners.forEach(ne -> {
-                    String value = "";
-                    String lemma = "";
-                    String type = ne.getType().toUpperCase();
-                    Set<String> posSet = new HashSet<>();
-                    int endSpan = startSpan;
-                    for (int j = ne.getStart(); j < ne.getEnd(); j++) {
-                        value += " " + words[j].trim();
-                        lemma += " " + (lemmas[j].equals(DEFAULT_LEMMA_OPEN_NLP) ? words[j].toLowerCase().trim() : lemmas[j].trim());
-                        posSet.add(posTags[j]);
-                        endSpan = wordSpans[j].getEnd();
-                        if (index.get() < j) {
-                            index.set(j);
+            // entities starting inside an entity already processed are skipped
+            while (entity < entityCount && namedEntities.getStart(entity) < i) {
+                entity++;
+            }
+            if (entity < entityCount && namedEntities.getStart(entity) == i) {
+                final int startSpan = sentence.getWordStart(i);
+                int lastIndex = i;
+                for (; entity < entityCount && namedEntities.getStart(entity) == i; entity++) {
+                    int neEnd = namedEntities.getEnd(entity);
+                    value.setLength(0);
+                    lemma.setLength(0);
+                    for (int j = i; j < neEnd; j++) {
+                        if (j > i) {
+                            value.append(' ');
+                            lemma.append(' ');
+                        }
+                        // words and lemmas are copied trimmed (and lower-cased) straight into the builder
+                        appendTrimmed(value, words[j]);
+                        if (lemmas[j].equals(DEFAULT_LEMMA_OPEN_NLP)) {
+                            appendLowerCaseTrimmed(lemma, words[j]);
+                        } else {
+                            appendTrimmed(lemma, lemmas[j]);
                         }
                     }
+                    if (lastIndex < neEnd - 1) {
+                        lastIndex = neEnd - 1;
+                    }
 
-                    value = value.trim();
-                    lemma = lemma.trim();
+                    String lemmaValue = trimmed(lemma);
                     //check stopwords
-                    if (isNotStopWord(lemma)) {
-                        OpenNLPAnnotation.Token token = sentence.getToken(value, lemma);
-                        token.addTokenNE(type);
-                        token.addTokenPOS(posSet);
-                        token.addTokenSpans(new Span(startSpan, endSpan));
+                    if (isNotStopWord(lemmaValue)) {
+                        int endSpan = neEnd > i ? sentence.getWordEnd(neEnd - 1) : startSpan;
+                        String tokenValue = trimmed(value);
+                        if (sentenceTokens != null) {
+                            sentenceTokens.token(tokenValue, lemmaValue, namedEntities.getType(entity), i, neEnd, startSpan, endSpan);
+                        } else {
+                            OpenNLPAnnotation.Token token = sentence.getToken(tokenValue, lemmaValue);
+                            token.addTokenNE(namedEntities.getType(entity));
+                            for (int j = i; j < neEnd; j++) {
+                                token.addTokenPOS(sentence.getPosTagId(j));
+                            }
+                            token.addTokenSpans(new Span(startSpan, endSpan));
+                        }
                     }
-                });
-                i = index.get();
+                }
+                i = lastIndex;
             } else {
-                String value = words[i].trim();
-                String lemma = lemmas[i].equals(DEFAULT_LEMMA_OPEN_NLP) ? words[i].toLowerCase() : lemmas[i].trim();
-                String ne = DEFAULT_BACKGROUND_SYMBOL;
-                String pos = posTags[i];
-                Set<String> posSet = new HashSet<>();
-                if (isNotStopWord(lemma)) {
-                    OpenNLPAnnotation.Token token = sentence.getToken(value, lemma);
-                    token.addTokenNE(ne);
-                    posSet.add(pos);
-                    token.addTokenPOS(posSet);
-                    token.addTokenSpans(wordSpans[i]);
+                String lemmaValue = lemmas[i].equals(DEFAULT_LEMMA_OPEN_NLP) ? workers.toLowerCase(words[i]) : lemmas[i].trim();
+                if (isNotStopWord(lemmaValue)) {
+                    if (sentenceTokens != null) {
+                        sentenceTokens.token(words[i].trim(), lemmaValue, BACKGROUND_NE_TYPE, i, i + 1, sentence.getWordStart(i), sentence.getWordEnd(i));
+                    } else {
+                        OpenNLPAnnotation.Token token = sentence.getToken(words[i].trim(), lemmaValue);
+                        token.addTokenNE(BACKGROUND_NE_TYPE);
+                        token.addTokenPOS(sentence.getPosTagId(i));
+                        token.addTokenSpans(new Span(sentence.getWordStart(i), sentence.getWordEnd(i)));
+                    }
                 }
             }
         }
+        if (sentenceTokens != null) {
+            sentenceTokens.end();
+        }
     }
 
     private boolean isNotStopWord(String value) {
-        return !annotators.contains("stopword") || !stopWords.contains(value.toLowerCase());
+        return !stopWordsEnabled || !stopWords.contains(value);
+    }
+
+    /*
+     * Appends the value without its leading and trailing whitespace (as String.trim() defines it), without copying it.
+     */
+    static StringBuilder appendTrimmed(StringBuilder builder, String value) {
+        int end = trimmedEnd(value);
+        return builder.append(value, trimmedStart(value, end), end);
+    }
+
+    /*
+     * Appends value.toLowerCase().trim(). ASCII characters are lower-cased in place; other characters, and locales with
+     * their own rules for ASCII letters (Turkish dotless i), go through String.toLowerCase().
+     */
+    static StringBuilder appendLowerCaseTrimmed(StringBuilder builder, String value) {
+        int end = trimmedEnd(value);
+        int start = trimmedStart(value, end);
+        if (!ASCII_LOWER_CASE) {
+            return builder.append(value.substring(start, end).toLowerCase());
+        }
+        for (int i = start; i < end; i++) {
+            if (value.charAt(i) >= 0x80) {
+                // context dependent mappings (e.g. final sigma) need the whole word
+                return builder.append(value.substring(start, end).toLowerCase());
+            }
+        }
+        builder.ensureCapacity(builder.length() + end - start);
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            builder.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+        return builder;
+    }
+
+    /*
+     * Content of the builder without leading and trailing whitespace, copied once.
+     */
+    static String trimmed(StringBuilder builder) {
+        int end = trimmedEnd(builder);
+        return builder.substring(trimmedStart(builder, end), end);
+    }
+
+    private static int trimmedEnd(CharSequence value) {
+        int end = value.length();
+        while (end > 0 && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static int trimmedStart(CharSequence value, int end) {
+        int start = 0;
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
     }
 
     private void findModelFiles(String path) {
@@ -547,6 +1067,36 @@ public class OpenNLPPipeline {
         }
     }
 
+    private <T extends BaseModel> T acquireModel(Class<T> clazz, URL resource) {
+        return acquire(resource.toString(), resource, (is) -> loadModel(clazz, is));
+    }
+
+    private <T> T acquire(String location, URL resource, ModelRegistry.ModelLoader<T> loader) {
+        if (resource == null) {
+            LOG.error("Model not found: " + location);
+            throw new RuntimeException("Model not found: " + location);
+        }
+        try {
+            T model = ModelRegistry.getInstance().acquire(resource, loader);
+            acquiredModels.add(model);
+            return model;
+        } catch (IOException ex) {
+            LOG.error("Error while loading model from path: " + location, ex);
+            throw new RuntimeException("Error while loading model from path: " + location, ex);
+        }
+    }
+
+    private <T> T acquire(Path file, ModelRegistry.FileModelLoader<T> loader) {
+        try {
+            T model = ModelRegistry.getInstance().acquire(file, loader);
+            acquiredModels.add(model);
+            return model;
+        } catch (IOException ex) {
+            LOG.error("Error while loading model from path: " + file, ex);
+            throw new RuntimeException("Error while loading model from path: " + file, ex);
+        }
+    }
+
     private <T extends BaseModel> T loadModel(Class<T> clazz, InputStream in) {
         try {
             Constructor<T> modelConstructor = clazz.getConstructor(InputStream.class);
@@ -575,25 +1125,42 @@ public class OpenNLPPipeline {
         return;
     }
 
-    private InputStream getInputStream(Properties properties, String property, String defaultValue) {
-        String path = defaultValue;
+    private String getModelPath(Properties properties, String property, String defaultValue) {
         if (properties != null) {
-            path = properties.getProperty(property, defaultValue);
+            return properties.getProperty(property, defaultValue);
         }
-        InputStream is;
+        return defaultValue;
+    }
+
+    /*
+     * File of a model given by an absolute path or a file URI, null for a classpath resource.
+     */
+    private Path getModelFile(String path) {
         try {
             if (path.startsWith("file://")) {
-                is = new FileInputStream(new File(new URI(path)));
+                return Paths.get(new URI(path));
             } else if (path.startsWith("/")) {
-                is = new FileInputStream(new File(path));
-            } else {
-                is = this.getClass().getResourceAsStream(path);
+                return Paths.get(path);
             }
-        } catch (FileNotFoundException | URISyntaxException ex) {
+            return null;
+        } catch (URISyntaxException ex) {
+            LOG.error("Error while loading model from path: " + path, ex);
+            throw new RuntimeException("Error while loading model from path: " + path, ex);
+        }
+    }
+
+    /*
+     * Location of a model given by an absolute path, a file URI or a classpath resource, null for a missing resource.
+     */
+    private URL getModelResource(Properties properties, String property, String defaultValue) {
+        String path = getModelPath(properties, property, defaultValue);
+        try {
+            Path file = getModelFile(path);
+            return file != null ? file.toUri().toURL() : this.getClass().getResource(path);
+        } catch (MalformedURLException ex) {
             LOG.error("Error while loading model from path: " + path, ex);
             throw new RuntimeException("Error while loading model from path: " + path, ex);
         }
-        return is;
     }
 
     private void closeInputStream(InputStream is, String name) {
@@ -649,6 +1216,61 @@ public class OpenNLPPipeline {
       }
     }*/
 
+    /**
+     * Releases the worker threads of this pipeline, its ME instances and its references to shared models. Annotations
+     * already running are completed, later ones are processed on the caller thread.
+     */
+    public void close() {
+        if (workerPool != null) {
+            workerPool.shutdown();
+        }
+        // the ME instances reference the models, sets still in use are dropped when they are given back
+        workers.close();
+        synchronized (acquiredModels) {
+            acquiredModels.forEach(model -> ModelRegistry.getInstance().release(model));
+            acquiredModels.clear();
+        }
+    }
+
+    /**
+     * Identifies the output of this pipeline: its annotators and the content of its models. Pipelines rebuilt with the
+     * same configuration from the same model files have the same fingerprint.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    private String computeFingerprint() {
+        List<String> modelKeys;
+        synchronized (acquiredModels) {
+            modelKeys = acquiredModels.stream()
+                    .map(model -> ModelRegistry.getInstance().getKey(model))
+                    .filter(Objects::nonNull)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        return Annotator.toString(annotators) + "|" + String.join(",", modelKeys);
+    }
+
+    /**
+     * Hits, misses and size of the sentence memo; empty if it is disabled.
+     */
+    public Map<String, Object> getSentenceCacheStatistics() {
+        return sentenceMemo != null ? sentenceMemo.getStatistics() : new HashMap<>();
+    }
+
+    /**
+     * Hits and misses of the lemma cache of the dictionary used by this pipeline (shared with the other pipelines using
+     * the same dictionary); empty if lemmatization is disabled.
+     */
+    public Map<String, Object> getLemmaCacheStatistics() {
+        return lemmaDetector instanceof CachingLemmatizer ? ((CachingLemmatizer) lemmaDetector).getStatistics() : new HashMap<>();
+    }
+
+    public int getThreadsNumber() {
+        return threadsNumber;
+    }
+
     public Properties getProperties() {
         return new Properties();//to be implemented
     }
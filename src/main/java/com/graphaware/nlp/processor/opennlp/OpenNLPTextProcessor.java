@@ -19,9 +19,22 @@ import com.graphaware.nlp.annotation.NLPTextProcessor;
 import com.graphaware.nlp.domain.*;
 import com.graphaware.nlp.dsl.request.PipelineSpecification;
 import com.graphaware.nlp.processor.AbstractTextProcessor;
+import com.graphaware.nlp.processor.opennlp.model.ModelRegistry;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntUnaryOperator;
 import java.util.stream.Collectors;
 
 import com.graphaware.nlp.util.Timer;
@@ -39,11 +52,123 @@ public class OpenNLPTextProcessor extends AbstractTextProcessor {
     public static final String TOKENIZER = "tokenizer";
     public static final String SENTIMENT = "sentiment";
 
-    private final Map<String, OpenNLPPipeline> pipelines = new HashMap<>();
+    /**
+     * System property with a comma separated list of model sets (among {@link #TOKENIZER}: tokenizer and NER models, and
+     * {@link #SENTIMENT}: tokenizer and sentiment models) loaded in the background when the processor is initialized,
+     * e.g. {@code -Dcom.graphaware.nlp.opennlp.warmup=tokenizer,sentiment}. No pipeline is registered: the pipelines
+     * created later share the models already loaded.
+     */
+    public static final String WARMUP_PROPERTY = "com.graphaware.nlp.opennlp.warmup";
+
+    /**
+     * System property selecting the executor used by {@link #annotateTextAsync(String, String, PipelineSpecification)}:
+     * either {@code virtual} (one virtual thread per document, on JVMs supporting them) or the number of platform
+     * threads of a bounded pool. Defaults to a pool with one thread per available processor.
+     */
+    public static final String ASYNC_EXECUTOR_PROPERTY = "com.graphaware.nlp.opennlp.async.executor";
+
+    /**
+     * System property enabling the annotation result cache: its size in bytes, optionally followed by k, m or g (e.g.
+     * {@code -Dcom.graphaware.nlp.opennlp.cache.size=64m}). The cache is disabled by default.
+     */
+    public static final String CACHE_SIZE_PROPERTY = "com.graphaware.nlp.opennlp.cache.size";
+
+    /**
+     * System property selecting the eviction policy of the annotation result cache: {@code lru} (default) or
+     * {@code tinylfu}.
+     */
+    public static final String CACHE_POLICY_PROPERTY = "com.graphaware.nlp.opennlp.cache.policy";
+
+    /*
+     * Pipelines are registered as futures: the first caller asking for a missing pipeline builds it, concurrent
+     * callers wait for the same instance instead of loading all the models once more.
+     */
+    private final ConcurrentMap<String, CompletableFuture<OpenNLPPipeline>> pipelines = new ConcurrentHashMap<>();
+    // built only to hold the warmed up models in the registry, never used for annotations
+    private final List<OpenNLPPipeline> warmupPipelines = new CopyOnWriteArrayList<>();
+    private volatile Thread warmupThread;
+
+    private volatile ForkJoinPool batchPool;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchTexts = new AtomicLong();
+    private final AtomicLong batchMillis = new AtomicLong();
+    private volatile Executor asyncExecutor;
+    // whether the async executor was created by the processor, and has to be shut down by it
+    private boolean asyncExecutorOwned;
+    private volatile boolean shutdown;
+    private volatile AnnotationCache<CachedAnnotation> annotationCache = createAnnotationCache(
+            System.getProperty(CACHE_SIZE_PROPERTY), System.getProperty(CACHE_POLICY_PROPERTY));
 
 
     @Override
     public void init() {
+        String warmup = System.getProperty(WARMUP_PROPERTY);
+        if (warmup != null && !warmup.trim().isEmpty()) {
+            warmupModels(Arrays.asList(warmup.split(",")).stream().map(String::trim).collect(Collectors.toList()));
+        }
+    }
+
+    /*
+     * Loads the models of the requested sets in the background, so that the first pipelines using them find them in the
+     * model registry instead of loading them once more.
+     */
+    private void warmupModels(List<String> names) {
+        Map<String, PipelineSpecification> specifications = new LinkedHashMap<>();
+        for (String name : names) {
+            PipelineSpecification specification = getWarmupSpecification(name);
+            if (specification == null) {
+                LOG.warn("Unknown model set " + name + " requested for warm-up, skipping it");
+                continue;
+            }
+            specifications.put(name, specification);
+        }
+        if (specifications.isEmpty()) {
+            return;
+        }
+        warmupThread = new Thread(() -> {
+            long start = System.currentTimeMillis();
+            specifications.forEach((name, specification) -> {
+                try {
+                    OpenNLPPipeline pipeline = buildPipeline(specification);
+                    warmupPipelines.add(pipeline);
+                    if (shutdown && warmupPipelines.remove(pipeline)) {
+                        pipeline.close();
+                    }
+                } catch (RuntimeException ex) {
+                    LOG.warn("Models of " + name + " could not be warmed up", ex);
+                }
+            });
+            LOG.info("OpenNLP models " + specifications.keySet() + " warmed up in " + (System.currentTimeMillis() - start) + " ms");
+        }, "opennlp-warmup");
+        warmupThread.setDaemon(true);
+        warmupThread.start();
+    }
+
+    /*
+     * Waits for the background warm-up started by init() to complete; true if there is none or it is done in time.
+     */
+    boolean awaitWarmup(long timeout, TimeUnit unit) throws InterruptedException {
+        Thread thread = warmupThread;
+        if (thread == null) {
+            return true;
+        }
+        thread.join(unit.toMillis(timeout));
+        return !thread.isAlive();
+    }
+
+    private PipelineSpecification getWarmupSpecification(String name) {
+        Map<String, Object> processingSteps = new HashMap<>();
+        if (TOKENIZER.equals(name)) {
+            processingSteps.put("tokenize", true);
+            processingSteps.put("ner", true);
+        } else if (SENTIMENT.equals(name)) {
+            processingSteps.put("tokenize", true);
+            processingSteps.put("sentiment", true);
+        } else {
+            return null;
+        }
+        // single threaded: the pipeline only loads models
+        return new PipelineSpecification("warmup-" + name, OpenNLPTextProcessor.class.getName(), processingSteps, null, 1L, Collections.emptyList(), Collections.emptyList());
     }
 
     @Override
@@ -65,9 +190,41 @@ public class OpenNLPTextProcessor extends AbstractTextProcessor {
         return pipeline;
     }
 
-    private void checkPipelineExistOrCreate(PipelineSpecification pipelineSpecification) {
-        if (!pipelines.containsKey(pipelineSpecification.getName())) {
-            createPipeline(pipelineSpecification);
+    private OpenNLPPipeline checkPipelineExistOrCreate(PipelineSpecification pipelineSpecification) {
+        String name = pipelineSpecification.getName();
+        CompletableFuture<OpenNLPPipeline> pipeline = pipelines.get(name);
+        if (pipeline == null) {
+            CompletableFuture<OpenNLPPipeline> created = new CompletableFuture<>();
+            pipeline = pipelines.putIfAbsent(name, created);
+            if (pipeline == null) {
+                pipeline = created;
+                build(created, pipelineSpecification);
+            }
+        }
+        return waitForPipeline(name, pipeline);
+    }
+
+    private void build(CompletableFuture<OpenNLPPipeline> pipeline, PipelineSpecification pipelineSpecification) {
+        try {
+            pipeline.complete(buildPipeline(pipelineSpecification));
+        } catch (Throwable ex) {
+            pipeline.completeExceptionally(ex);
+        }
+    }
+
+    private OpenNLPPipeline waitForPipeline(String name, CompletableFuture<OpenNLPPipeline> pipeline) {
+        try {
+            return pipeline.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for pipeline " + name, ex);
+        } catch (ExecutionException ex) {
+            // don't keep failed pipelines around, next caller will try to build it again
+            pipelines.remove(name, pipeline);
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RuntimeException("Error while creating pipeline " + name, ex.getCause());
         }
     }
 
@@ -106,19 +263,216 @@ public class OpenNLPTextProcessor extends AbstractTextProcessor {
     @Override
     public AnnotatedText annotateText(String text, String lang, PipelineSpecification pipelineSpecification) {
         Timer timer = Timer.start();
-        checkPipelineExistOrCreate(pipelineSpecification);
+        OpenNLPPipeline pipeline = checkPipelineExistOrCreate(pipelineSpecification);
         timer.lap("pipeline check");
-        OpenNLPPipeline pipeline = pipelines.get(pipelineSpecification.getName());
+        // a single text is a batch of its own
+        return annotateDocument(text, lang, pipelineSpecification, pipeline, new TagInterner(), pipeline.newBatch());
+    }
+
+    /**
+     * Annotates a batch of texts with the same pipeline. Documents are spread over the available cores, the pipeline
+     * lookup is done only once per batch and the returned list keeps the order of the input texts.
+     */
+    public List<AnnotatedText> annotateTexts(List<String> texts, String lang, PipelineSpecification pipelineSpecification) {
+        if (texts == null || texts.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        OpenNLPPipeline pipeline = checkPipelineExistOrCreate(pipelineSpecification);
+        List<AnnotatedText> result;
+        // tag values are shared by all the documents of the batch
+        TagInterner interner = new TagInterner();
+        // the adaptive data of the name finders is kept for this batch only, whatever other callers do meanwhile
+        long batch = pipeline.newBatch();
+        try {
+            result = getBatchPool().submit(() -> texts.parallelStream()
+                    .map(text -> annotateDocument(text, lang, pipelineSpecification, pipeline, interner, batch))
+                    .collect(Collectors.toList()))
+                    .get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Batch annotation interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Error while annotating batch of " + texts.size() + " texts", ex.getCause());
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        batches.incrementAndGet();
+        batchTexts.addAndGet(texts.size());
+        batchMillis.addAndGet(elapsed);
+        LOG.info("Annotated batch of " + texts.size() + " texts with pipeline " + pipelineSpecification.getName()
+                + " in " + elapsed + " ms (" + (elapsed / texts.size()) + " ms per text)");
+        return result;
+    }
+
+    /**
+     * Number of batches annotated by {@link #annotateTexts(List, String, PipelineSpecification)}, their texts and the
+     * time spent on them (pipeline lookup included).
+     */
+    public Map<String, Object> getBatchStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        long texts = batchTexts.get();
+        long millis = batchMillis.get();
+        statistics.put("batches", batches.get());
+        statistics.put("texts", texts);
+        statistics.put("totalMillis", millis);
+        statistics.put("millisPerText", texts > 0 ? (double) millis / texts : 0.0);
+        return statistics;
+    }
+
+    /**
+     * Non-blocking variant of {@link #annotateText(String, String, PipelineSpecification)}: the annotation runs on the
+     * async executor (see {@link #ASYNC_EXECUTOR_PROPERTY} and {@link #setAsyncExecutor(Executor)}) and the calling
+     * thread is released immediately.
+     */
+    public CompletableFuture<AnnotatedText> annotateTextAsync(String text, String lang, PipelineSpecification pipelineSpecification) {
+        return CompletableFuture.supplyAsync(() -> annotateText(text, lang, pipelineSpecification), getAsyncExecutor());
+    }
+
+    /**
+     * Replaces the executor used for asynchronous annotations, e.g. with one shared by the embedding application. The
+     * previous executor is shut down if the processor created it (annotations already submitted are completed);
+     * executors given by the application are never shut down by the processor.
+     */
+    public void setAsyncExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Async executor can't be null");
+        }
+        Executor previous;
+        boolean owned;
+        synchronized (this) {
+            previous = asyncExecutor;
+            owned = asyncExecutorOwned;
+            asyncExecutor = executor;
+            asyncExecutorOwned = false;
+        }
+        if (owned) {
+            shutdownExecutor(previous);
+        }
+    }
+
+    private Executor getAsyncExecutor() {
+        Executor executor = asyncExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = asyncExecutor;
+                if (executor == null) {
+                    executor = createAsyncExecutor(System.getProperty(ASYNC_EXECUTOR_PROPERTY));
+                    asyncExecutor = executor;
+                    asyncExecutorOwned = true;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static void shutdownExecutor(Executor executor) {
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    private static Executor createAsyncExecutor(String configuration) {
+        String value = configuration != null ? configuration.trim() : "";
+        if (value.equalsIgnoreCase("virtual")) {
+            try {
+                // looked up reflectively, the processor is still built for Java 8
+                Executor executor = (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                LOG.info("Asynchronous annotations run on virtual threads");
+                return executor;
+            } catch (ReflectiveOperationException ex) {
+                LOG.warn("Virtual threads are not supported by this JVM, using a platform thread pool");
+            }
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (!value.isEmpty() && !value.equalsIgnoreCase("virtual")) {
+            try {
+                threads = Math.max(1, Integer.parseInt(value));
+            } catch (NumberFormatException ex) {
+                LOG.warn("Invalid value " + configuration + " for " + ASYNC_EXECUTOR_PROPERTY + ", using " + threads + " threads");
+            }
+        }
+        AtomicInteger threadSequence = new AtomicInteger(0);
+        LOG.info("Asynchronous annotations run on a pool of " + threads + " threads");
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "opennlp-async-" + threadSequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Enables the annotation result cache, or replaces it with an empty one: texts annotated again with the same
+     * language and pipeline (same specification and same model files) are rebuilt from the cached result instead of
+     * running the models. A size of 0 disables the cache.
+     *
+     * @param maxBytes estimated heap the cached results may use
+     * @param policy {@code lru} or {@code tinylfu}, see {@link #CACHE_POLICY_PROPERTY}
+     */
+    public void setAnnotationCache(long maxBytes, String policy) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Cache size can't be negative: " + maxBytes);
+        }
+        annotationCache = maxBytes > 0
+                ? new AnnotationCache<>(maxBytes, AnnotationCache.EvictionPolicy.fromName(policy != null ? policy : "lru"), CachedAnnotation::estimateBytes)
+                : null;
+    }
+
+    /**
+     * Hits, misses, evictions and size of the annotation result cache; empty if the cache is disabled.
+     */
+    public Map<String, Object> getAnnotationCacheStatistics() {
+        AnnotationCache<CachedAnnotation> cache = annotationCache;
+        return cache != null ? cache.getStatistics() : new HashMap<>();
+    }
+
+    /**
+     * Models held by the process-wide model registry: their number, their serialized size and the size saved by sharing
+     * them between pipelines.
+     */
+    public Map<String, Object> getModelRegistryStatistics() {
+        return ModelRegistry.getInstance().getStatistics();
+    }
+
+    private static AnnotationCache<CachedAnnotation> createAnnotationCache(String size, String policy) {
+        if (size == null || size.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            long maxBytes = AnnotationCache.parseSize(size);
+            if (maxBytes <= 0) {
+                return null;
+            }
+            AnnotationCache.EvictionPolicy evictionPolicy = AnnotationCache.EvictionPolicy.fromName(policy != null ? policy : "lru");
+            LOG.info("Annotation results are cached, up to " + maxBytes + " bytes (" + evictionPolicy.name().toLowerCase() + ")");
+            return new AnnotationCache<>(maxBytes, evictionPolicy, CachedAnnotation::estimateBytes);
+        } catch (RuntimeException ex) {
+            LOG.warn("Invalid annotation cache configuration " + size + " / " + policy + ", the cache is disabled: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private AnnotatedText annotateDocument(String text, String lang, PipelineSpecification pipelineSpecification, OpenNLPPipeline pipeline, TagInterner interner, long batch) {
+        // phrases are not part of the cached record
+        AnnotationCache<CachedAnnotation> cache = pipelineSpecification.hasProcessingStep(STEP_PHRASE) ? null : annotationCache;
+        String cacheKey = null;
+        if (cache != null) {
+            cacheKey = AnnotationCache.key(text, lang, getFingerprint(pipelineSpecification, pipeline));
+            CachedAnnotation cached = cache.get(cacheKey);
+            if (cached != null) {
+                return restoreDocument(cached, lang, pipelineSpecification, interner);
+            }
+        }
         OpenNLPAnnotation document = new OpenNLPAnnotation(text, Collections.EMPTY_MAP);
-        pipeline.annotate(document);
+        // tags are written into the domain sentences while the pipeline produces the tokens
+        AnnotatedTextEmitter emitter = new AnnotatedTextEmitter(lang, interner);
+        CachedAnnotation.Recorder recorder = cache != null ? new CachedAnnotation.Recorder(emitter) : null;
+        document.setTokenEmitter(recorder != null ? recorder : emitter);
+        pipeline.annotate(document, batch);
 
         AnnotatedText result = new AnnotatedText();
         List<OpenNLPAnnotation.Sentence> sentences = document.getSentences();
-        final AtomicInteger sentenceSequence = new AtomicInteger(0);
         sentences.stream().forEach((sentence) -> {
-            int sentenceNumber = sentenceSequence.getAndIncrement();
-            final Sentence newSentence = new Sentence(sentence.getSentence(), sentenceNumber);
-            extractTokens(lang, sentence, newSentence);
+            final Sentence newSentence = emitter.getSentence(sentence);
             if (pipelineSpecification.hasProcessingStep(STEP_SENTIMENT)) {
                 extractSentiment(sentence, newSentence);
             }
@@ -127,10 +481,51 @@ public class OpenNLPTextProcessor extends AbstractTextProcessor {
             }
             result.addSentence(newSentence);
         });
+        if (recorder != null) {
+            cache.put(cacheKey, recorder.build(sentences));
+        }
 
         return result;
     }
 
+    private AnnotatedText restoreDocument(CachedAnnotation cached, String lang, PipelineSpecification pipelineSpecification, TagInterner interner) {
+        AnnotatedText result = new AnnotatedText();
+        AnnotatedTextEmitter emitter = new AnnotatedTextEmitter(lang, interner);
+        for (CachedAnnotation.CachedSentence sentence : cached.getSentences()) {
+            Sentence newSentence = emitter.replay(sentence);
+            if (pipelineSpecification.hasProcessingStep(STEP_SENTIMENT)) {
+                extractSentiment(sentence.getSentiment(), newSentence);
+            }
+            result.addSentence(newSentence);
+        }
+        return result;
+    }
+
+    /*
+     * Everything the result of a pipeline depends on: its specification and the models it has loaded.
+     */
+    private static String getFingerprint(PipelineSpecification pipelineSpecification, OpenNLPPipeline pipeline) {
+        Map<String, Object> processingSteps = pipelineSpecification.getProcessingSteps() != null
+                ? new TreeMap<>(pipelineSpecification.getProcessingSteps())
+                : Collections.emptyMap();
+        return pipelineSpecification.getName() + "|" + processingSteps + "|" + pipelineSpecification.getStopWords()
+                + "|" + pipeline.getFingerprint();
+    }
+
+    private ForkJoinPool getBatchPool() {
+        ForkJoinPool pool = batchPool;
+        if (pool == null) {
+            synchronized (this) {
+                pool = batchPool;
+                if (pool == null) {
+                    pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+                    batchPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
     protected Map<String, Object> getPipelineProperties(OpenNLPPipeline pipeline) {
         Map<String, Object> options = new HashMap<>();
         for (Object o : pipeline.getProperties().keySet()) {
@@ -196,30 +591,21 @@ public class OpenNLPTextProcessor extends AbstractTextProcessor {
     }
 
     private void extractSentiment(OpenNLPAnnotation.Sentence sentence, Sentence newSentence) {
+        extractSentiment(sentence.getSentiment(), newSentence);
+    }
+
+    private void extractSentiment(String sentiment, Sentence newSentence) {
         int score = -1;
-        if (sentence.getSentiment() != null) { // && !sentence.getSentiment().equals("-")) {
+        if (sentiment != null) { // && !sentiment.equals("-")) {
             try {
-                score = Integer.valueOf(sentence.getSentiment());
+                score = Integer.valueOf(sentiment);
             } catch (NumberFormatException ex) {
-                LOG.error("NumberFormatException: error extracting sentiment " + sentence.getSentiment() + " as a number.", ex);
+                LOG.error("NumberFormatException: error extracting sentiment " + sentiment + " as a number.", ex);
             }
         }
         newSentence.setSentiment(score);
     }
 
-    private void extractTokens(String lang, OpenNLPAnnotation.Sentence sentence, final Sentence newSentence) {
-        Collection<OpenNLPAnnotation.Token> tokens = sentence.getTokens();
-        tokens.stream().filter((token) -> token != null /*&& checkLemmaIsValid(token.getToken())*/).forEach((token) -> {
-            Tag newTag = getTag(token, lang);
-            if (newTag != null) {
-                Tag tagInSentence = newSentence.addTag(newTag);
-                token.getTokenSpans().stream().forEach((span) -> {
-                    newSentence.addTagOccurrence(span.getStart(), span.getEnd(), token.getToken(), tagInSentence);
-                });
-            }
-        });
-    }
-
     //    private void extractRelationship(AnnotatedText annotatedText, List<CoreMap> sentences, Annotation document) {
 //        Map<Integer, CorefChain> corefChains = document.get(CorefCoreAnnotations.CorefChainAnnotation.class);
 //        if (corefChains != null) {
@@ -298,11 +684,11 @@ public class OpenNLPTextProcessor extends AbstractTextProcessor {
 
     @NotNull
     private OpenNLPPipeline getOpenNLPPipeline(String name) {
-        final OpenNLPPipeline openNLPPipeline = pipelines.get(name);
+        final CompletableFuture<OpenNLPPipeline> openNLPPipeline = pipelines.get(name);
         if (openNLPPipeline == null) {
             throw new RuntimeException("Pipeline " + name + " doesn't exist");
         }
-        return openNLPPipeline;
+        return waitForPipeline(name, openNLPPipeline);
     }
 
     private Tag getTag(OpenNLPAnnotation.Token token, String lang) {
@@ -312,8 +698,7 @@ public class OpenNLPTextProcessor extends AbstractTextProcessor {
         pos.addAll(token.getTokenPOS());
         ne.addAll(token.getTokenNEs());
 
-        // apply lemma validity check (to all words in case of NamedEntities)
-        lemma = Arrays.asList(lemma.split(" ")).stream().filter(str -> checkLemmaIsValid(str)).collect(Collectors.joining(" "));
+        lemma = filterLemma(lemma);
         if (lemma == null || lemma.length() == 0)
             return null;
 
@@ -324,6 +709,152 @@ public class OpenNLPTextProcessor extends AbstractTextProcessor {
         return tag;
     }
 
+    /*
+     * Applies the lemma validity check (to all words in case of NamedEntities).
+     */
+    private String filterLemma(String lemma) {
+        StringBuilder result = new StringBuilder(lemma.length());
+        for (String word : lemma.split(" ")) {
+            if (checkLemmaIsValid(word)) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append(word);
+            }
+        }
+        return result.toString();
+    }
+
+    /*
+     * Builds the domain sentences of a document directly from the tokens emitted by the pipeline. Occurrences of the
+     * same token value in a sentence share one Tag whose POS and NE lists are the union of all the occurrences, like
+     * the tokens collected by OpenNLPAnnotation.Sentence. Tags and their occurrences are added to the sentence when it
+     * ends, once their POS and NE lists are complete.
+     */
+    private class AnnotatedTextEmitter implements TokenEmitter {
+
+        private final String lang;
+        private final TagInterner interner;
+        private final Map<Integer, SentenceTags> sentences = new ConcurrentHashMap<>();
+
+        AnnotatedTextEmitter(String lang, TagInterner interner) {
+            this.lang = lang;
+            this.interner = interner;
+        }
+
+        @Override
+        public SentenceTokens startSentence(OpenNLPAnnotation.Sentence sentence) {
+            SentenceTags sentenceTags = new SentenceTags(new Sentence(sentence.getSentence(), sentence.getSentenceNumber()), sentence::getPosTagId);
+            sentences.put(sentence.getSentenceNumber(), sentenceTags);
+            return sentenceTags;
+        }
+
+        Sentence replay(CachedAnnotation.CachedSentence sentence) {
+            SentenceTags sentenceTags = new SentenceTags(new Sentence(sentence.getSentence(), sentence.getSentenceNumber()), sentence::getPosTagId);
+            sentence.replay(sentenceTags);
+            return sentenceTags.result;
+        }
+
+        Sentence getSentence(OpenNLPAnnotation.Sentence sentence) {
+            SentenceTags sentenceTags = sentences.get(sentence.getSentenceNumber());
+            return sentenceTags != null ? sentenceTags.result : new Sentence(sentence.getSentence(), sentence.getSentenceNumber());
+        }
+
+        private class SentenceTags implements SentenceTokens {
+
+            private final Sentence result;
+            private final IntUnaryOperator posTagIds;
+            private final Map<String, TokenTag> tags = new HashMap<>();
+            private final List<TokenOccurrence> occurrences = new ArrayList<>();
+
+            SentenceTags(Sentence result, IntUnaryOperator posTagIds) {
+                this.result = result;
+                this.posTagIds = posTagIds;
+            }
+
+            @Override
+            public void token(String value, String lemma, int neType, int firstWord, int endWord, int begin, int end) {
+                TokenTag tokenTag = tags.get(value);
+                if (tokenTag == null) {
+                    // lemma of the first occurrence, as for OpenNLPAnnotation.Token
+                    String validLemma = filterLemma(lemma);
+                    tokenTag = new TokenTag(validLemma.isEmpty() ? null : new Tag(interner.lemma(validLemma), lang));
+                    tags.put(value, tokenTag);
+                }
+                if (tokenTag.tag == null) {
+                    return;
+                }
+                tokenTag.addNe(TagVocabulary.NE.getTag(neType));
+                for (int i = firstWord; i < endWord; i++) {
+                    int posTag = posTagIds.applyAsInt(i);
+                    if (posTag >= 0) {
+                        tokenTag.addPos(TagVocabulary.POS.getTag(posTag));
+                    }
+                }
+                occurrences.add(new TokenOccurrence(value, tokenTag, begin, end));
+            }
+
+            @Override
+            public void end() {
+                // POS and NE lists are complete, equal lists of the document are replaced by one shared instance
+                tags.values().stream()
+                        .filter(tokenTag -> tokenTag.tag != null)
+                        .forEach(tokenTag -> {
+                            tokenTag.tag.setPos(interner.tags(tokenTag.pos));
+                            tokenTag.tag.setNe(interner.tags(tokenTag.ne));
+                        });
+                // the sentence may merge a tag into an existing one with the same lemma, so it only gets complete tags
+                for (TokenOccurrence occurrence : occurrences) {
+                    TokenTag tokenTag = occurrence.tokenTag;
+                    if (tokenTag.tagInSentence == null) {
+                        tokenTag.tagInSentence = result.addTag(tokenTag.tag);
+                    }
+                    result.addTagOccurrence(occurrence.begin, occurrence.end, occurrence.value, tokenTag.tagInSentence);
+                }
+                occurrences.clear();
+            }
+        }
+    }
+
+    private static class TokenTag {
+
+        private final Tag tag;
+        private final List<String> pos = new ArrayList<>(1);
+        private final List<String> ne = new ArrayList<>(1);
+        private Tag tagInSentence;
+
+        TokenTag(Tag tag) {
+            this.tag = tag;
+        }
+
+        void addPos(String value) {
+            if (!pos.contains(value)) {
+                pos.add(value);
+            }
+        }
+
+        void addNe(String value) {
+            if (!ne.contains(value)) {
+                ne.add(value);
+            }
+        }
+    }
+
+    private static class TokenOccurrence {
+
+        private final String value;
+        private final TokenTag tokenTag;
+        private final int begin;
+        private final int end;
+
+        TokenOccurrence(String value, TokenTag tokenTag, int begin, int end) {
+            this.value = value;
+            this.tokenTag = tokenTag;
+            this.begin = begin;
+            this.end = end;
+        }
+    }
+
     private List<Tag> annotateTagsAux(String text, String lang, OpenNLPPipeline pipeline) {
         List<Tag> result = new ArrayList<>();
         OpenNLPAnnotation document = new OpenNLPAnnotation(text);
@@ -358,16 +889,14 @@ public class OpenNLPTextProcessor extends AbstractTextProcessor {
     @Override
     public AnnotatedText sentiment(AnnotatedText annotated) {
         OpenNLPPipeline pipeline = getOpenNLPPipeline(SENTIMENT);
-        annotated.getSentences().stream().forEach(item -> { // don't use parallelStream(), it crashes with the current content of the body
-            OpenNLPAnnotation document = new OpenNLPAnnotation(item.getSentence());
-            pipeline.annotate(document);
-
-            List<OpenNLPAnnotation.Sentence> sentences = document.getSentences();
-            Optional<OpenNLPAnnotation.Sentence> sentence = sentences.stream().findFirst();
-            if (sentence != null && sentence.isPresent()) {
-                extractSentiment(sentence.get(), item);
-            }
-        });
+        // sentences are already split, they are categorized as one batch without running the whole pipeline again
+        List<Sentence> sentences = annotated.getSentences();
+        List<String> sentiments = pipeline.categorize(
+                sentences.stream().map(Sentence::getSentence).collect(Collectors.toList()),
+                OpenNLPAnnotation.DEFAULT_SENTIMENT_PROBTHR);
+        for (int i = 0; i < sentences.size(); i++) {
+            extractSentiment(sentiments.get(i), sentences.get(i));
+        }
 
         return annotated;
     }
@@ -532,8 +1061,13 @@ public class OpenNLPTextProcessor extends AbstractTextProcessor {
 
     @Override
     public void createPipeline(PipelineSpecification pipelineSpecification) {
+        OpenNLPPipeline pipeline = buildPipeline(pipelineSpecification);
+        CompletableFuture<OpenNLPPipeline> previous = pipelines.put(pipelineSpecification.getName(), CompletableFuture.completedFuture(pipeline));
+        closePipeline(previous);
+    }
+
+    protected OpenNLPPipeline buildPipeline(PipelineSpecification pipelineSpecification) {
         //TODO add validation
-        String name = pipelineSpecification.getName();
         PipelineBuilder pipelineBuilder = new PipelineBuilder();
         List<String> specActive = new ArrayList<>();
         List<String> stopwordsList;
@@ -574,6 +1108,18 @@ public class OpenNLPTextProcessor extends AbstractTextProcessor {
             pipelineBuilder.extractRelations();
             specActive.add("relations");
         }
+        if (pipelineSpecification.hasProcessingStep("parallelNER")) {
+            pipelineBuilder.parallelNER();
+        }
+        if (pipelineSpecification.hasProcessingStep("adaptiveData")) {
+            pipelineBuilder.adaptiveData(pipelineSpecification.getProcessingStepAsString("adaptiveData"));
+        }
+        if (pipelineSpecification.hasProcessingStep("sentenceCache")) {
+            pipelineBuilder.sentenceCache(pipelineSpecification.getProcessingStepAsString("sentenceCache"));
+        }
+        if (pipelineSpecification.hasProcessingStep("lemmatizer")) {
+            pipelineBuilder.lemmatizer(pipelineSpecification.getProcessingStepAsString("lemmatizer"));
+        }
         if (pipelineSpecification.hasProcessingStep("customNER")) {
             if (!specActive.contains("ner")) {
                 pipelineBuilder.extractNEs();
@@ -593,16 +1139,63 @@ public class OpenNLPTextProcessor extends AbstractTextProcessor {
         Long threadNumber = pipelineSpecification.getThreadNumber() != 0 ? pipelineSpecification.getThreadNumber() : 4L;
         pipelineBuilder.threadNumber(threadNumber.intValue());
 
-        OpenNLPPipeline pipeline = pipelineBuilder.build();
-        pipelines.put(name, pipeline);
+        return pipelineBuilder.build();
     }
 
 
     @Override
     public void removePipeline(String name) {
-        if (!pipelines.containsKey(name)) {
+        CompletableFuture<OpenNLPPipeline> pipeline = pipelines.remove(name);
+        if (pipeline == null) {
             throw new RuntimeException("No pipeline found with name: " + name);
         }
-        pipelines.remove(name);
+        closePipeline(pipeline);
+    }
+
+    /**
+     * Releases the resources of the processor: closes its pipelines, including the ones built for the warm-up, and
+     * shuts down the batch pool and the async executor it created. Annotations already running are allowed to finish.
+     * The processor can still be used afterwards, pipelines and pools are then created again on demand.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (String name : new ArrayList<>(pipelines.keySet())) {
+            closePipeline(pipelines.remove(name));
+        }
+        for (OpenNLPPipeline pipeline : warmupPipelines) {
+            if (warmupPipelines.remove(pipeline)) {
+                pipeline.close();
+            }
+        }
+        ForkJoinPool pool;
+        Executor executor;
+        synchronized (this) {
+            pool = batchPool;
+            batchPool = null;
+            executor = asyncExecutorOwned ? asyncExecutor : null;
+            if (asyncExecutorOwned) {
+                asyncExecutor = null;
+                asyncExecutorOwned = false;
+            }
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+        shutdownExecutor(executor);
+    }
+
+    /*
+     * Closes a pipeline that is no longer registered; one still being built is closed as soon as it is ready. Annotations
+     * already running keep their reference to the pipeline and are allowed to finish.
+     */
+    private void closePipeline(CompletableFuture<OpenNLPPipeline> pipeline) {
+        if (pipeline == null) {
+            return;
+        }
+        pipeline.thenAccept(built -> {
+            if (!pipelines.containsValue(pipeline)) {
+                built.close();
+            }
+        });
     }
 }
@@ -7,6 +7,7 @@ package com.graphaware.nlp.processor.opennlp;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Properties;
 
@@ -15,36 +16,28 @@ class PipelineBuilder {
     private static final String CUSTOM_STOP_WORD_LIST = "start,starts,period,periods,a,an,and,are,as,at,be,but,by,for,if,in,into,is,it,no,not,of,o,on,or,such,that,the,their,then,there,these,they,this,to,was,will,with";
 
     private final Properties properties = new Properties();
-    private final StringBuilder annotators = new StringBuilder(); //basics annotators
+    private final EnumSet<Annotator> annotators = EnumSet.noneOf(Annotator.class); //basics annotators
     private int threadsNumber = 4;
 
-    private void checkForExistingAnnotators() {
-        if (annotators.toString().length() > 0) {
-            annotators.append(", ");
-        }
-    }
-
     public PipelineBuilder tokenize() {
-        checkForExistingAnnotators();
-        annotators.append("tokenize, pos, lemma");
+        annotators.add(Annotator.TOKENIZE);
+        annotators.add(Annotator.POS);
+        annotators.add(Annotator.LEMMA);
         return this;
     }
 
     public PipelineBuilder extractNEs() {
-        checkForExistingAnnotators();
-        annotators.append("ner");
+        annotators.add(Annotator.NER);
         return this;
     }
 
     public PipelineBuilder extractSentiment() {
-        checkForExistingAnnotators();
-        annotators.append("sentiment");
+        annotators.add(Annotator.SENTIMENT);
         return this;
     }
 
     public PipelineBuilder extractRelations() {
-        checkForExistingAnnotators();
-        annotators.append("relation");
+        annotators.add(Annotator.RELATION);
         return this;
     }
 
@@ -52,6 +45,39 @@ class PipelineBuilder {
         return this;
     }
 
+    public PipelineBuilder parallelNER() {
+        properties.setProperty("parallelNER", "true");
+        return this;
+    }
+
+    /**
+     * Scope of the adaptive data of the name finders: {@code document} (default), {@code batch} or the number of
+     * documents after which it is cleared.
+     */
+    public PipelineBuilder adaptiveData(String scope) {
+        properties.setProperty("adaptiveData", scope);
+        return this;
+    }
+
+    /**
+     * Memory the pipeline may use to remember the annotation of recurring sentences, in bytes with an optional k, m or
+     * g suffix; disabled by default.
+     */
+    public PipelineBuilder sentenceCache(String size) {
+        properties.setProperty("sentenceCache", size);
+        return this;
+    }
+
+    /**
+     * Location of the lemmatizer dictionary (absolute path, file URI or classpath resource): either the OpenNLP text
+     * format or a compiled {@link com.graphaware.nlp.processor.opennlp.model.LemmaDictionary}, which is memory-mapped
+     * when it is a file.
+     */
+    public PipelineBuilder lemmatizer(String location) {
+        properties.setProperty("lemmatizer", location);
+        return this;
+    }
+
     public PipelineBuilder extractCustomNEs(String ners) {
         properties.setProperty("customNEs", ners);
         return this;
@@ -63,20 +89,18 @@ class PipelineBuilder {
     }
 
     public PipelineBuilder defaultStopWordAnnotator() {
-        checkForExistingAnnotators();
-        annotators.append("stopword");
+        annotators.add(Annotator.STOPWORD);
         properties.setProperty("stopword", CUSTOM_STOP_WORD_LIST);
         return this;
     }
 
     public PipelineBuilder customStopWordAnnotator(String customStopWordList) {
-        checkForExistingAnnotators();
         String stopWordList;
-        if (annotators.indexOf("stopword") >= 0) {
+        if (annotators.contains(Annotator.STOPWORD)) {
             String alreadyexistingStopWordList = properties.getProperty("stopword");
             stopWordList = alreadyexistingStopWordList + "," + customStopWordList;
         } else {
-            annotators.append("stopword");
+            annotators.add(Annotator.STOPWORD);
             stopWordList = CUSTOM_STOP_WORD_LIST + "," + customStopWordList;
         }
         properties.setProperty("stopword", stopWordList);
@@ -93,7 +117,7 @@ class PipelineBuilder {
     }
 
     public OpenNLPPipeline build() {
-        properties.setProperty("annotators", annotators.toString());
+        properties.setProperty("annotators", Annotator.toString(annotators));
         properties.setProperty("threads", String.valueOf(threadsNumber));
         OpenNLPPipeline pipeline = new OpenNLPPipeline(properties);
         return pipeline;
@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import opennlp.tools.namefind.DefaultNameContextGenerator;
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.TokenNameFinderFactory;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.util.Span;
+import opennlp.tools.util.featuregen.AdaptiveFeatureGenerator;
+import opennlp.tools.util.featuregen.AdditionalContextFeatureGenerator;
+import opennlp.tools.util.featuregen.AggregatedFeatureGenerator;
+import opennlp.tools.util.featuregen.BigramNameFeatureGenerator;
+import opennlp.tools.util.featuregen.CachedFeatureGenerator;
+import opennlp.tools.util.featuregen.GeneratorFactory;
+import opennlp.tools.util.featuregen.OutcomePriorFeatureGenerator;
+import opennlp.tools.util.featuregen.PrefixFeatureGenerator;
+import opennlp.tools.util.featuregen.SentenceFeatureGenerator;
+import opennlp.tools.util.featuregen.SuffixFeatureGenerator;
+import opennlp.tools.util.featuregen.TokenClassFeatureGenerator;
+import opennlp.tools.util.featuregen.TokenFeatureGenerator;
+import opennlp.tools.util.featuregen.WindowFeatureGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Name finder computing the token features its model has in common with the other NER models once per sentence.
+ *
+ * The NER models are usually trained with the same feature generator descriptor, so they compute the same token
+ * window, token class, bigram and sentence features for every token of a sentence. An {@link Ensemble} (one per set of
+ * name finders, used by one thread at a time) builds the generators of each distinct descriptor once; the name finders
+ * sharing that descriptor take the features of those generators from a cache holding the current sentence, and only
+ * run their own generators for the model dependent features (adaptive data such as the previous map).
+ *
+ * A generator is shared only when it is safe to: the descriptor must be cached (so its features don't depend on the
+ * previous outcomes), must not use model resources (dictionaries, clusters), and the generator must be one of the
+ * stateless generators listed in STATELESS_GENERATORS, or a window over them. Anything else (the previous map,
+ * the document begin marker, custom generators) keeps running per model. Models not meeting these conditions get a
+ * plain {@link NameFinderME}; results are the same either way.
+ */
+final class SharedFeatureNameFinder extends NameFinderME {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedFeatureNameFinder.class);
+
+    private static final String GENERATOR_DESCRIPTOR = "generator.featuregen";
+
+    // generators whose features depend on the current sentence only: token, tokenclass, bigram, sentence, prefix,
+    // suffix and definition
+    private static final Set<Class<?>> STATELESS_GENERATORS = new HashSet<>(Arrays.asList(
+            TokenFeatureGenerator.class, TokenClassFeatureGenerator.class, BigramNameFeatureGenerator.class,
+            SentenceFeatureGenerator.class, PrefixFeatureGenerator.class, SuffixFeatureGenerator.class,
+            OutcomePriorFeatureGenerator.class));
+
+    // private fields read to reuse the generators OpenNLP builds, null (and nothing reused) if they can't be read
+    private static final Field WINDOWED_GENERATOR = getField(WindowFeatureGenerator.class, "generator");
+    private static final Field CONTEXT_FEATURE_GENERATORS = getField(DefaultNameContextGenerator.class, "featureGenerators");
+
+    private final AdditionalContextFeatureGenerator additionalContext = new AdditionalContextFeatureGenerator();
+    private SentenceFeatures shared;
+
+    private SharedFeatureNameFinder(TokenNameFinderModel model) {
+        super(model);
+    }
+
+    /*
+     * Replaces the context generator built by NameFinderME with one taking the shared features from the sentence
+     * features. The generators of the model are the ones NameFinderME has just built, so nothing is created twice
+     * unless they can't be read; the finder is left as it is if the descriptor doesn't match the shared one.
+     */
+    private boolean share(TokenNameFinderModel model, SentenceFeatures shared) {
+        AdaptiveFeatureGenerator generator = getContextFeatureGenerator(contextGenerator);
+        List<AdaptiveFeatureGenerator> own = getMembers(generator != null ? generator : model.getFactory().createFeatureGenerators());
+        if (own == null || own.size() != shared.generators.size()) {
+            return false;
+        }
+        // same context generator as TokenNameFinderFactory and NameFinderME build, with the shared features
+        contextGenerator = new DefaultNameContextGenerator(new CachedFeatureGenerator(new EnsembleFeatureGenerator(own, shared)));
+        contextGenerator.addFeatureGenerator(new WindowFeatureGenerator(additionalContext, 8, 8));
+        this.shared = shared;
+        return true;
+    }
+
+    @Override
+    public Span[] find(String[] tokens, String[][] additionalContext) {
+        this.additionalContext.setCurrentContext(additionalContext);
+        if (shared != null) {
+            shared.startSentence(tokens);
+        }
+        return super.find(tokens, additionalContext);
+    }
+
+    /**
+     * Creates a set of name finders used by one thread at a time, sharing the features of the models with the same descriptor.
+     */
+    static final class Ensemble {
+
+        private final Map<String, SentenceFeatures> sentenceFeatures = new HashMap<>();
+
+        NameFinderME createNameFinder(TokenNameFinderModel model) {
+            if (model.getFactory().getClass() != TokenNameFinderFactory.class) {
+                return new NameFinderME(model);
+            }
+            byte[] descriptor = model.getArtifact(GENERATOR_DESCRIPTOR);
+            String key = descriptor != null ? new String(descriptor, StandardCharsets.UTF_8) : "";
+            if (!sentenceFeatures.containsKey(key)) {
+                sentenceFeatures.put(key, SentenceFeatures.create(descriptor, model));
+            }
+            SentenceFeatures shared = sentenceFeatures.get(key);
+            if (shared == null) {
+                return new NameFinderME(model);
+            }
+            SharedFeatureNameFinder finder = new SharedFeatureNameFinder(model);
+            finder.share(model, shared);
+            return finder;
+        }
+    }
+
+    private static Field getField(Class<?> type, String name) {
+        try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            LOG.warn("Cannot access " + type.getName() + "." + name + " in this OpenNLP version, NER features are shared less", ex);
+            return null;
+        }
+    }
+
+    private static Object getFieldValue(Field field, Object target) {
+        if (field == null) {
+            return null;
+        }
+        try {
+            return field.get(target);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            LOG.warn("Cannot read " + field, ex);
+            return null;
+        }
+    }
+
+    /*
+     * Feature generator of the model in a context generator built by TokenNameFinderFactory, null if unknown.
+     */
+    private static AdaptiveFeatureGenerator getContextFeatureGenerator(Object contextGenerator) {
+        if (contextGenerator == null || contextGenerator.getClass() != DefaultNameContextGenerator.class) {
+            return null;
+        }
+        Object generators = getFieldValue(CONTEXT_FEATURE_GENERATORS, contextGenerator);
+        // the model generator followed by the additional context window added by NameFinderME
+        return generators instanceof AdaptiveFeatureGenerator[] && ((AdaptiveFeatureGenerator[]) generators).length == 2
+                ? ((AdaptiveFeatureGenerator[]) generators)[0]
+                : null;
+    }
+
+    /*
+     * Top level generators of a cached descriptor, null if the features are not cached.
+     */
+    private static List<AdaptiveFeatureGenerator> getMembers(AdaptiveFeatureGenerator generator) {
+        boolean cached = false;
+        while (true) {
+            if (generator instanceof CachedFeatureGenerator) {
+                cached = true;
+                generator = ((CachedFeatureGenerator) generator).getCachedFeatureGenerator();
+            } else if (generator instanceof AggregatedFeatureGenerator && ((AggregatedFeatureGenerator) generator).getGenerators().size() == 1) {
+                generator = ((AggregatedFeatureGenerator) generator).getGenerators().iterator().next();
+            } else {
+                break;
+            }
+        }
+        if (!cached) {
+            return null;
+        }
+        return generator instanceof AggregatedFeatureGenerator
+                ? new ArrayList<>(((AggregatedFeatureGenerator) generator).getGenerators())
+                : Collections.singletonList(generator);
+    }
+
+    /*
+     * Whether the features of a generator depend on the current sentence only: a whitelisted generator, a window over
+     * one, or an aggregate of them. Subclasses are not trusted.
+     */
+    static boolean isShareable(AdaptiveFeatureGenerator generator) {
+        if (STATELESS_GENERATORS.contains(generator.getClass())) {
+            return true;
+        }
+        if (generator.getClass() == AggregatedFeatureGenerator.class) {
+            return ((AggregatedFeatureGenerator) generator).getGenerators().stream().allMatch(SharedFeatureNameFinder::isShareable);
+        }
+        if (generator.getClass() == WindowFeatureGenerator.class) {
+            AdaptiveFeatureGenerator windowed = getWindowedGenerator((WindowFeatureGenerator) generator);
+            return windowed != null && isShareable(windowed);
+        }
+        return false;
+    }
+
+    /*
+     * Whether the features of a model depend on the current sentence only, so that its name finder gives the same
+     * entities for a sentence whatever it has seen before.
+     */
+    static boolean isStateless(TokenNameFinderModel model) {
+        try {
+            return isStateless(model.getFactory().createFeatureGenerators());
+        } catch (RuntimeException ex) {
+            LOG.debug("Cannot inspect the feature generators of the NER model", ex);
+            return false;
+        }
+    }
+
+    private static boolean isStateless(AdaptiveFeatureGenerator generator) {
+        if (generator.getClass() == CachedFeatureGenerator.class) {
+            return isStateless(((CachedFeatureGenerator) generator).getCachedFeatureGenerator());
+        }
+        if (generator.getClass() == AggregatedFeatureGenerator.class) {
+            return ((AggregatedFeatureGenerator) generator).getGenerators().stream().allMatch(SharedFeatureNameFinder::isStateless);
+        }
+        return isShareable(generator);
+    }
+
+    private static AdaptiveFeatureGenerator getWindowedGenerator(WindowFeatureGenerator window) {
+        Object generator = getFieldValue(WINDOWED_GENERATOR, window);
+        return generator instanceof AdaptiveFeatureGenerator ? (AdaptiveFeatureGenerator) generator : null;
+    }
+
+    /*
+     * Features of the shareable generators of a descriptor for the current sentence, per generator and token.
+     */
+    private static final class SentenceFeatures {
+
+        // null where the generator is not shared
+        private final List<AdaptiveFeatureGenerator> generators;
+        // words of the current sentence, copied so that an array reused for another sentence is noticed
+        private String[] words;
+        // array the features were last requested for
+        private String[] tokens;
+        // per generator and token, filled on first use
+        private String[][][] features;
+
+        private SentenceFeatures(List<AdaptiveFeatureGenerator> generators) {
+            this.generators = generators;
+        }
+
+        static SentenceFeatures create(byte[] descriptor, TokenNameFinderModel model) {
+            AdaptiveFeatureGenerator generator;
+            try {
+                // without resources, descriptors using model resources fail to build and are not shared
+                generator = descriptor != null
+                        ? GeneratorFactory.create(new ByteArrayInputStream(descriptor), (name) -> null)
+                        : model.getFactory().createFeatureGenerators();
+            } catch (IOException | RuntimeException ex) {
+                LOG.debug("NER features not shared, descriptor uses model resources", ex);
+                return null;
+            }
+            List<AdaptiveFeatureGenerator> members = getMembers(generator);
+            if (members == null) {
+                return null;
+            }
+            List<AdaptiveFeatureGenerator> generators = new ArrayList<>(members.size());
+            boolean shared = false;
+            for (AdaptiveFeatureGenerator member : members) {
+                boolean shareable = isShareable(member);
+                generators.add(shareable ? member : null);
+                shared |= shareable;
+            }
+            return shared ? new SentenceFeatures(generators) : null;
+        }
+
+        /*
+         * Called by each name finder before it runs on a sentence: the features are kept only for the same words.
+         */
+        void startSentence(String[] tokens) {
+            if (!Arrays.equals(tokens, words)) {
+                words = tokens.clone();
+                features = new String[generators.size()][][];
+            }
+            this.tokens = tokens;
+        }
+
+        void createFeatures(List<String> result, int generator, String[] tokens, int index, String[] previousOutcomes) {
+            if (tokens != this.tokens) {
+                startSentence(tokens);
+            }
+            if (features[generator] == null) {
+                features[generator] = new String[tokens.length][];
+            }
+            String[] tokenFeatures = features[generator][index];
+            if (tokenFeatures == null) {
+                List<String> created = new ArrayList<>();
+                generators.get(generator).createFeatures(created, tokens, index, previousOutcomes);
+                tokenFeatures = created.toArray(new String[created.size()]);
+                features[generator][index] = tokenFeatures;
+            }
+            Collections.addAll(result, tokenFeatures);
+        }
+    }
+
+    /*
+     * Feature generator of one model: shared generators read from the sentence features, the others run as usual. The
+     * generators keep their order, so the model sees exactly the features its own generator would create.
+     */
+    private static final class EnsembleFeatureGenerator implements AdaptiveFeatureGenerator {
+
+        private final AdaptiveFeatureGenerator[] own;
+        private final SentenceFeatures shared;
+
+        EnsembleFeatureGenerator(List<AdaptiveFeatureGenerator> generators, SentenceFeatures shared) {
+            this.own = new AdaptiveFeatureGenerator[generators.size()];
+            for (int i = 0; i < own.length; i++) {
+                own[i] = shared.generators.get(i) == null ? generators.get(i) : null;
+            }
+            this.shared = shared;
+        }
+
+        @Override
+        public void createFeatures(List<String> features, String[] tokens, int index, String[] previousOutcomes) {
+            for (int i = 0; i < own.length; i++) {
+                if (own[i] != null) {
+                    own[i].createFeatures(features, tokens, index, previousOutcomes);
+                } else {
+                    shared.createFeatures(features, i, tokens, index, previousOutcomes);
+                }
+            }
+        }
+
+        @Override
+        public void updateAdaptiveData(String[] tokens, String[] outcomes) {
+            for (AdaptiveFeatureGenerator generator : own) {
+                if (generator != null) {
+                    generator.updateAdaptiveData(tokens, outcomes);
+                }
+            }
+        }
+
+        @Override
+        public void clearAdaptiveData() {
+            for (AdaptiveFeatureGenerator generator : own) {
+                if (generator != null) {
+                    generator.clearAdaptiveData();
+                }
+            }
+        }
+    }
+}
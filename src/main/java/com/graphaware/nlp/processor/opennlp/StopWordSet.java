@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable, case-insensitive set of stop words.
+ *
+ * Words are lower-cased once when the set is built and stored in an open addressing table, lookups compare characters
+ * in place so they don't allocate. Sets are shared: pipelines configured with the same list get the same instance,
+ * held weakly so it goes away with the last pipeline using it.
+ * Case folding is done per character ({@link Character#toLowerCase(char)}), i.e. locale independent.
+ */
+final class StopWordSet {
+
+    private static final ConcurrentMap<List<String>, SharedSet> SHARED = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<StopWordSet> COLLECTED = new ReferenceQueue<>();
+
+    static final StopWordSet EMPTY = new StopWordSet(new ArrayList<>());
+
+    private final String[] table;
+    private final int[] hashes;
+    private final int mask;
+    private final int size;
+
+    private StopWordSet(List<String> words) {
+        int capacity = Integer.highestOneBit(Math.max(4, words.size() * 2 - 1)) << 1;
+        this.table = new String[capacity];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 1;
+        this.size = words.size();
+        for (String word : words) {
+            int hash = hash(word);
+            int slot = hash & mask;
+            while (table[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = word;
+            hashes[slot] = hash;
+        }
+    }
+
+    /**
+     * Returns the set of the given words, building it only if no pipeline already uses the same list.
+     */
+    static StopWordSet of(Collection<String> words) {
+        TreeSet<String> normalized = new TreeSet<>();
+        for (String word : words) {
+            String value = toLowerCase(word.trim());
+            if (!value.isEmpty()) {
+                normalized.add(value);
+            }
+        }
+        if (normalized.isEmpty()) {
+            return EMPTY;
+        }
+        expungeCollected();
+        List<String> key = new ArrayList<>(normalized);
+        while (true) {
+            SharedSet shared = SHARED.get(key);
+            StopWordSet set = shared != null ? shared.get() : null;
+            if (set != null) {
+                return set;
+            }
+            set = new StopWordSet(key);
+            SharedSet created = new SharedSet(key, set);
+            if (shared == null ? SHARED.putIfAbsent(key, created) == null : SHARED.replace(key, shared, created)) {
+                return set;
+            }
+        }
+    }
+
+    /*
+     * Number of sets still registered, including the ones collected but not expunged yet.
+     */
+    static int getSharedCount() {
+        expungeCollected();
+        return SHARED.size();
+    }
+
+    private static void expungeCollected() {
+        SharedSet collected;
+        while ((collected = (SharedSet) COLLECTED.poll()) != null) {
+            SHARED.remove(collected.key, collected);
+        }
+    }
+
+    boolean contains(CharSequence value) {
+        if (value == null || size == 0) {
+            return false;
+        }
+        int hash = hash(value);
+        int slot = hash & mask;
+        String word;
+        while ((word = table[slot]) != null) {
+            if (hashes[slot] == hash && equalsIgnoreCase(word, value)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static int hash(CharSequence value) {
+        int hash = 0;
+        for (int i = 0; i < value.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(value.charAt(i));
+        }
+        // spread the bits, the table is indexed by the low ones
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equalsIgnoreCase(String word, CharSequence value) {
+        if (word.length() != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) != Character.toLowerCase(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class SharedSet extends WeakReference<StopWordSet> {
+
+        private final List<String> key;
+
+        SharedSet(List<String> key, StopWordSet set) {
+            super(set, COLLECTED);
+            this.key = key;
+        }
+    }
+
+    private static String toLowerCase(String value) {
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            result.append(Character.toLowerCase(value.charAt(i)));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * {@link AnnotationCache} split into independent segments by key hash, so that threads looking up different keys
+ * don't wait for each other. Each segment gets an equal share of the byte budget and runs its own eviction policy, the
+ * statistics are summed over the segments.
+ */
+final class StripedAnnotationCache<V> {
+
+    // segments smaller than this would hold too few entries for the eviction policy to be meaningful
+    private static final long MIN_SEGMENT_BYTES = 64 * 1024;
+    private static final int MAX_SEGMENTS = 64;
+
+    private final AnnotationCache<V>[] segments;
+    private final int mask;
+
+    StripedAnnotationCache(long maxBytes, AnnotationCache.EvictionPolicy policy, ToLongFunction<V> weigher) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        int wanted = Math.min(MAX_SEGMENTS, 2 * Runtime.getRuntime().availableProcessors());
+        int count = Integer.highestOneBit((int) Math.max(1, Math.min(wanted, maxBytes / MIN_SEGMENT_BYTES)));
+        this.segments = newSegments(count);
+        for (int i = 0; i < count; i++) {
+            segments[i] = new AnnotationCache<>(maxBytes / count, policy, weigher);
+        }
+        this.mask = count - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> AnnotationCache<V>[] newSegments(int count) {
+        return (AnnotationCache<V>[]) new AnnotationCache<?>[count];
+    }
+
+    V get(String key) {
+        return segment(key).get(key);
+    }
+
+    void put(String key, V value) {
+        segment(key).put(key, value);
+    }
+
+    int getSegmentCount() {
+        return segments.length;
+    }
+
+    Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        for (AnnotationCache<V> segment : segments) {
+            segment.getStatistics().forEach((name, value) -> {
+                if (value instanceof Long) {
+                    statistics.merge(name, value, (a, b) -> (Long) a + (Long) b);
+                } else if (value instanceof Integer) {
+                    statistics.merge(name, value, (a, b) -> (Integer) a + (Integer) b);
+                } else {
+                    statistics.putIfAbsent(name, value);
+                }
+            });
+        }
+        long hits = (Long) statistics.get("hits");
+        long requests = hits + (Long) statistics.get("misses");
+        statistics.put("hitRate", requests > 0 ? (double) hits / requests : 0.0);
+        statistics.put("segments", segments.length);
+        return statistics;
+    }
+
+    private AnnotationCache<V> segment(String key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & mask];
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Intern table for the values of the tags of a document (or of a batch of documents): the same lemma, and the same
+ * list of POS tags or NE types, are represented by a single instance however many times they appear.
+ *
+ * Only values are shared, every sentence still gets its own Tag objects because tags carry per-sentence state. Shared
+ * lists are unmodifiable. The table is thread safe, sentences of a document may be annotated concurrently.
+ */
+final class TagInterner {
+
+    private final ConcurrentMap<String, String> lemmas = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<String>, List<String>> tagLists = new ConcurrentHashMap<>();
+
+    String lemma(String lemma) {
+        String existing = lemmas.putIfAbsent(lemma, lemma);
+        return existing != null ? existing : lemma;
+    }
+
+    List<String> tags(List<String> tags) {
+        List<String> existing = tagLists.get(tags);
+        if (existing != null) {
+            return existing;
+        }
+        List<String> shared = Collections.unmodifiableList(new ArrayList<>(tags));
+        existing = tagLists.putIfAbsent(shared, shared);
+        return existing != null ? existing : shared;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interned vocabulary of annotation tags (POS tags, named entity types).
+ *
+ * Tag alphabets are small and almost closed, so every distinct tag gets a small int id and tokens store the tags they
+ * carry as bits of a long; the rare ids beyond 63 (e.g. many custom entity types) go to an overflow {@link BitSet}.
+ * Tags are converted back to strings only when the annotation is exported.
+ */
+final class TagVocabulary {
+
+    static final TagVocabulary POS = new TagVocabulary();
+    static final TagVocabulary NE = new TagVocabulary();
+
+    static final int MASK_SIZE = Long.SIZE;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] tags = new String[MASK_SIZE];
+    private int size;
+
+    int getId(String tag) {
+        Integer id = ids.get(tag);
+        if (id != null) {
+            return id;
+        }
+        return register(tag);
+    }
+
+    String getTag(int id) {
+        return tags[id];
+    }
+
+    /**
+     * Tags of a token in id order.
+     */
+    List<String> getTags(long mask, BitSet overflow) {
+        List<String> result = new ArrayList<>(Long.bitCount(mask) + (overflow != null ? overflow.cardinality() : 0));
+        String[] current = tags;
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            result.add(current[Long.numberOfTrailingZeros(bits)]);
+        }
+        if (overflow != null) {
+            for (int id = overflow.nextSetBit(0); id >= 0; id = overflow.nextSetBit(id + 1)) {
+                result.add(current[id]);
+            }
+        }
+        return result;
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    private synchronized int register(String tag) {
+        Integer id = ids.get(tag);
+        if (id != null) {
+            return id;
+        }
+        String[] current = tags;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        // the name must be visible before the id is published
+        current[size] = tag;
+        tags = current;
+        ids.put(tag, size);
+        return size++;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+/**
+ * Receives the tokens of a document while the pipeline produces them.
+ *
+ * When an {@link OpenNLPAnnotation} has an emitter, tokens are handed over as soon as they are assembled instead of
+ * being collected in {@link OpenNLPAnnotation.Sentence#getTokens()}, so that a consumer can build its own
+ * representation without an intermediate token graph. Sentences may be annotated concurrently, each sentence by a
+ * single thread.
+ */
+interface TokenEmitter {
+
+    SentenceTokens startSentence(OpenNLPAnnotation.Sentence sentence);
+
+    interface SentenceTokens {
+
+        /**
+         * @param value text of the token (several words for named entities)
+         * @param lemma lemma of the token
+         * @param neType named entity type id in {@link TagVocabulary#NE}
+         * @param firstWord index of the first word of the token in the sentence
+         * @param endWord index after the last word of the token
+         * @param begin start offset of the token in the sentence
+         * @param end end offset of the token in the sentence
+         */
+        void token(String value, String lemma, int neType, int firstWord, int endWord, int begin, int end);
+
+        /**
+         * Called once all the tokens of the sentence have been emitted.
+         */
+        default void end() {
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp.model;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import opennlp.tools.lemmatizer.Lemmatizer;
+
+/**
+ * Immutable lemmatizer dictionary in a compiled binary format, a drop-in replacement of the OpenNLP
+ * {@code DictionaryLemmatizer} (same lookups, same results) that doesn't need any object per entry.
+ *
+ * The file is a sorted string table: a header, the offsets of the keys and of their lemmas, then the keys
+ * ({@code word TAB pos} in UTF-8, sorted bytewise) and the distinct lemma lists. Lookups are binary searches done in
+ * place, so the file can be memory-mapped read-only: its pages are loaded lazily and shared by every pipeline and
+ * every JVM using it, and survive restarts in the OS cache. Compiled dictionaries are recognized by their
+ * {@link #EXTENSION}; {@link #compile(InputStream, OutputStream)} (or {@link #main(String[])}) converts the text
+ * format ({@code word TAB pos TAB lemma[#lemma...]} per line) read by DictionaryLemmatizer.
+ */
+public final class LemmaDictionary implements Lemmatizer {
+
+    public static final String EXTENSION = ".lemmas";
+
+    private static final int MAGIC = 0x4C454D31; // "LEM1"
+    private static final int HEADER_SIZE = 4 * 4;
+    private static final String UNKNOWN_LEMMA = "O";
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int keyOffsetsStart;
+    private final int lemmaOffsetsStart;
+    private final int keysStart;
+    private final int lemmasStart;
+
+    private LemmaDictionary(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a compiled lemma dictionary");
+        }
+        this.size = buffer.getInt(4);
+        int keysLength = buffer.getInt(8);
+        int lemmasLength = buffer.getInt(12);
+        this.keyOffsetsStart = HEADER_SIZE;
+        this.lemmaOffsetsStart = keyOffsetsStart + 4 * (size + 1);
+        this.keysStart = lemmaOffsetsStart + 4 * size;
+        this.lemmasStart = keysStart + keysLength;
+        if (size < 0 || keysLength < 0 || lemmasLength < 0 || (long) lemmasStart + lemmasLength != buffer.capacity()) {
+            throw new IOException("Corrupted lemma dictionary");
+        }
+    }
+
+    public static boolean isCompiled(String location) {
+        return location != null && location.endsWith(EXTENSION);
+    }
+
+    /**
+     * Maps a compiled dictionary file read-only.
+     */
+    public static LemmaDictionary map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid once the channel is closed
+            return new LemmaDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads a compiled dictionary from a stream (e.g. a classpath resource, which can't be mapped) into a single
+     * buffer.
+     */
+    public static LemmaDictionary read(InputStream in) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] chunk = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            content.write(chunk, 0, read);
+        }
+        return new LemmaDictionary(ByteBuffer.wrap(content.toByteArray()));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String[] lemmatize(String[] words, String[] posTags) {
+        String[] result = new String[words.length];
+        for (int i = 0; i < words.length; i++) {
+            String lemmas = lookup(words[i], posTags[i]);
+            String[] values = lemmas != null ? lemmas.split("#") : null;
+            result[i] = values != null && values.length > 0 ? values[0] : UNKNOWN_LEMMA;
+        }
+        return result;
+    }
+
+    @Override
+    public List<List<String>> lemmatize(List<String> words, List<String> posTags) {
+        List<List<String>> result = new ArrayList<>(words.size());
+        for (int i = 0; i < words.size(); i++) {
+            String lemmas = lookup(words.get(i), posTags.get(i));
+            String[] values = lemmas != null ? lemmas.split("#") : null;
+            result.add(new ArrayList<>(values != null && values.length > 0 ? Arrays.asList(values) : Arrays.asList(UNKNOWN_LEMMA)));
+        }
+        return result;
+    }
+
+    /*
+     * Lemma list of a word, looked up lower-cased like DictionaryLemmatizer does; null if unknown.
+     */
+    private String lookup(String word, String posTag) {
+        if (word == null || posTag == null) {
+            return null;
+        }
+        byte[] key = (word.toLowerCase() + '\t' + posTag).getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareKey(middle, key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                int lemmaOffset = lemmasStart + buffer.getInt(lemmaOffsetsStart + 4 * middle);
+                byte[] lemmas = new byte[buffer.getInt(lemmaOffset)];
+                // relative reads on a private view, the shared buffer is only read with absolute offsets
+                ByteBuffer view = buffer.duplicate();
+                view.position(lemmaOffset + 4);
+                view.get(lemmas);
+                return new String(lemmas, StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private int compareKey(int index, byte[] key) {
+        int start = keysStart + buffer.getInt(keyOffsetsStart + 4 * index);
+        int length = keysStart + buffer.getInt(keyOffsetsStart + 4 * (index + 1)) - start;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (buffer.get(start + i) & 0xFF) - (key[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+
+    /**
+     * Converts a text dictionary (UTF-8, as read by DictionaryLemmatizer) to the compiled format. As for
+     * DictionaryLemmatizer, the last line wins when a (word, pos) pair is listed twice.
+     */
+    public static void compile(InputStream text, OutputStream out) throws IOException {
+        Map<String, String> entries = new HashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(text, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String[] fields = line.split("\t");
+            if (fields.length < 3) {
+                throw new IOException("Invalid lemma dictionary line " + lineNumber + ": " + line);
+            }
+            entries.put(fields[0] + '\t' + fields[1], fields[2]);
+        }
+
+        List<Map.Entry<byte[], String>> sorted = new ArrayList<>(entries.size());
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            sorted.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue()));
+        }
+        sorted.sort((first, second) -> compareBytes(first.getKey(), second.getKey()));
+
+        // lemma lists are stored once, however many words share them
+        ByteArrayOutputStream lemmas = new ByteArrayOutputStream();
+        DataOutputStream lemmasOut = new DataOutputStream(lemmas);
+        Map<String, Integer> lemmaOffsets = new HashMap<>();
+        ByteArrayOutputStream keyBytes = new ByteArrayOutputStream();
+        int[] keyOffsets = new int[sorted.size() + 1];
+        int[] entryLemmaOffsets = new int[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            keyOffsets[i] = keyBytes.size();
+            keyBytes.write(sorted.get(i).getKey());
+            String value = sorted.get(i).getValue();
+            Integer offset = lemmaOffsets.get(value);
+            if (offset == null) {
+                offset = lemmas.size();
+                byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                lemmasOut.writeInt(encoded.length);
+                lemmasOut.write(encoded);
+                lemmaOffsets.put(value, offset);
+            }
+            entryLemmaOffsets[i] = offset;
+        }
+        keyOffsets[sorted.size()] = keyBytes.size();
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(sorted.size());
+        data.writeInt(keyBytes.size());
+        data.writeInt(lemmas.size());
+        for (int offset : keyOffsets) {
+            data.writeInt(offset);
+        }
+        for (int offset : entryLemmaOffsets) {
+            data.writeInt(offset);
+        }
+        keyBytes.writeTo(data);
+        lemmas.writeTo(data);
+        data.flush();
+    }
+
+    private static int compareBytes(byte[] first, byte[] second) {
+        int common = Math.min(first.length, second.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (first[i] & 0xFF) - (second[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return first.length - second.length;
+    }
+
+    /**
+     * Command line converter: {@code LemmaDictionary <en-lemmatizer.dict> <en-lemmatizer.lemmas>}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: " + LemmaDictionary.class.getName() + " <text dictionary> <compiled dictionary" + EXTENSION + ">");
+            System.exit(1);
+        }
+        try (InputStream in = Files.newInputStream(Paths.get(args[0]));
+                OutputStream out = Files.newOutputStream(Paths.get(args[1]))) {
+            compile(in, new BufferedOutputStream(out));
+        }
+        System.out.println("Compiled " + map(Paths.get(args[1])).size() + " entries into " + args[1]);
+    }
+}
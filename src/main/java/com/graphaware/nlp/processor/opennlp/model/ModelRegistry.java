@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide registry of loaded models (BaseModel instances, lemmatizer dictionaries, ...).
+ *
+ * Models are identified by their location plus their size and modification time, or a checksum of their content when
+ * the location does not provide them, so pipelines that point to the same file share one deserialized instance. Each pipeline acquires its models and releases them when it is closed; a model
+ * is dropped from the registry once nobody references it anymore.
+ */
+public class ModelRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ModelRegistry.class);
+
+    private static final ModelRegistry INSTANCE = new ModelRegistry();
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<Object, Entry> entriesByModel = new IdentityHashMap<>();
+
+    public static ModelRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    @FunctionalInterface
+    public interface ModelLoader<T> {
+
+        T load(InputStream is) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface FileModelLoader<T> {
+
+        T load(Path file) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Loading<T> {
+
+        T load() throws IOException;
+    }
+
+    /**
+     * Returns the model stored in the stream, deserializing it only if no other pipeline already holds the same one.
+     * The stream is fully consumed but not closed. Every call must be balanced by {@link #release(Object)}.
+     */
+    public <T> T acquire(String location, InputStream is, ModelLoader<T> loader) throws IOException {
+        byte[] content = readFully(is);
+        String key = location + "#" + content.length + "-" + checksum(content);
+        return acquire(key, location, content.length, () -> loader.load(new ByteArrayInputStream(content)));
+    }
+
+    /**
+     * Same as {@link #acquire(String, InputStream, ModelLoader)} for a file or classpath resource: the resource is
+     * identified by its location, size and modification time, and is only read if no other pipeline already holds the
+     * model. Resources that do not report their size or modification time are read and checksummed.
+     */
+    public <T> T acquire(URL resource, ModelLoader<T> loader) throws IOException {
+        String location = resource.toString();
+        long size;
+        long modified;
+        if ("file".equals(resource.getProtocol())) {
+            Path path = toPath(resource);
+            size = Files.size(path);
+            modified = Files.getLastModifiedTime(path).toMillis();
+        } else {
+            URLConnection connection = resource.openConnection();
+            size = connection.getContentLengthLong();
+            modified = connection.getLastModified();
+        }
+        if (size < 0 || modified <= 0) {
+            try (InputStream is = resource.openStream()) {
+                return acquire(location, is, loader);
+            }
+        }
+        String key = location + "#" + size + "-" + modified;
+        return acquire(key, location, size, () -> {
+            try (InputStream is = resource.openStream()) {
+                return loader.load(is);
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #acquire(String, InputStream, ModelLoader)} for a model the loader reads from the file itself
+     * (e.g. by mapping it): the file is identified by its path, size and modification time and is not read here.
+     */
+    public <T> T acquire(Path file, FileModelLoader<T> loader) throws IOException {
+        Path path = file.toAbsolutePath();
+        long size = Files.size(path);
+        String key = path + "#" + size + "-" + Files.getLastModifiedTime(path).toMillis();
+        return acquire(key, path.toString(), size, () -> loader.load(path));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T acquire(String key, String location, long size, Loading<T> loader) throws IOException {
+        Entry entry;
+        boolean loadHere = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, size);
+                entries.put(key, entry);
+                loadHere = true;
+            }
+            entry.references++;
+        }
+
+        if (loadHere) {
+            try {
+                Object model = loader.load();
+                synchronized (this) {
+                    entriesByModel.put(model, entry);
+                }
+                entry.model.complete(model);
+                LOG.info("Model " + location + " loaded (" + size + " bytes)");
+            } catch (IOException | RuntimeException ex) {
+                synchronized (this) {
+                    entries.remove(key);
+                }
+                entry.model.completeExceptionally(ex);
+                throw ex;
+            }
+        } else {
+            LOG.info("Model " + location + " shared with other pipelines (" + entry.references + " references, "
+                    + size + " bytes saved, " + getSavedBytes() + " bytes saved by the registry)");
+        }
+
+        try {
+            return (T) entry.model.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for model " + location, ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("Error while loading model " + location, ex.getCause());
+        }
+    }
+
+    public synchronized void release(Object model) {
+        if (model == null) {
+            return;
+        }
+        Entry entry = entriesByModel.get(model);
+        if (entry == null) {
+            return;
+        }
+        entry.references--;
+        if (entry.references <= 0) {
+            entries.remove(entry.key);
+            entriesByModel.remove(model);
+            LOG.info("Model " + entry.key + " is not used anymore, removed from registry");
+        }
+    }
+
+    /**
+     * Registry key (location, size and modification time or checksum) of a model acquired from this registry, null for unknown models.
+     */
+    public synchronized String getKey(Object model) {
+        Entry entry = model != null ? entriesByModel.get(model) : null;
+        return entry != null ? entry.key : null;
+    }
+
+    /**
+     * Number of distinct models currently held.
+     */
+    public synchronized int getModelCount() {
+        return entriesByModel.size();
+    }
+
+    /**
+     * Serialized size of all the models currently held; used as an estimate of their heap footprint.
+     */
+    public synchronized long getLoadedBytes() {
+        return entriesByModel.values().stream().mapToLong(entry -> entry.size).sum();
+    }
+
+    /**
+     * Estimate of the heap saved by sharing: the size of every additional reference that would have otherwise
+     * deserialized its own copy.
+     */
+    public synchronized long getSavedBytes() {
+        return entriesByModel.values().stream().mapToLong(entry -> (entry.references - 1) * entry.size).sum();
+    }
+
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("models", getModelCount());
+        statistics.put("loadedBytes", getLoadedBytes());
+        statistics.put("savedBytes", getSavedBytes());
+        return statistics;
+    }
+
+    private static Path toPath(URL resource) throws IOException {
+        try {
+            return Paths.get(resource.toURI());
+        } catch (URISyntaxException | IllegalArgumentException ex) {
+            throw new IOException("Invalid model location " + resource, ex);
+        }
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        if (is == null) {
+            throw new IOException("Model input stream is null");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static String checksum(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static class Entry {
+
+        private final String key;
+        private final long size;
+        private final CompletableFuture<Object> model = new CompletableFuture<>();
+        private int references;
+
+        Entry(String key, long size) {
+            this.key = key;
+            this.size = size;
+        }
+    }
+}
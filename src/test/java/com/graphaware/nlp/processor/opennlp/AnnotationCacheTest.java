@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AnnotationCacheTest {
+
+    // values weigh their length, keys are short enough to be negligible in these tests
+    private static AnnotationCache<String> cache(long maxBytes, AnnotationCache.EvictionPolicy policy) {
+        return new AnnotationCache<>(maxBytes, policy, value -> value.length());
+    }
+
+    @Test
+    public void testKeyDependsOnTextLanguageAndFingerprint() {
+        String key = AnnotationCache.key("Some text", "en", "pipeline");
+
+        assertEquals(64, key.length());
+        assertEquals(key, AnnotationCache.key("Some text", "en", "pipeline"));
+        assertNotEquals(key, AnnotationCache.key("Some text.", "en", "pipeline"));
+        assertNotEquals(key, AnnotationCache.key("Some text", "de", "pipeline"));
+        assertNotEquals(key, AnnotationCache.key("Some text", "en", "other pipeline"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() {
+        AnnotationCache<String> cache = cache(3 * 100 + 3 * 2, AnnotationCache.EvictionPolicy.LRU);
+        cache.put("a", repeat('a', 100));
+        cache.put("b", repeat('b', 100));
+        cache.put("c", repeat('c', 100));
+        cache.get("a");
+        cache.put("d", repeat('d', 100));
+
+        assertNull(cache.get("b"));
+        assertEquals(repeat('a', 100), cache.get("a"));
+        assertEquals(repeat('d', 100), cache.get("d"));
+        assertTrue(cache.getBytes() <= 3 * 100 + 3 * 2);
+
+        Map<String, Object> statistics = cache.getStatistics();
+        assertEquals(3L, statistics.get("hits"));
+        assertEquals(1L, statistics.get("misses"));
+        assertEquals(1L, statistics.get("evictions"));
+        assertEquals(3, statistics.get("entries"));
+    }
+
+    @Test
+    public void testEntriesLargerThanTheBudgetAreRejected() {
+        AnnotationCache<String> cache = cache(50, AnnotationCache.EvictionPolicy.LRU);
+        cache.put("a", repeat('a', 10));
+        cache.put("b", repeat('b', 100));
+
+        assertNull(cache.get("b"));
+        assertEquals(repeat('a', 10), cache.get("a"));
+        assertEquals(1L, cache.getStatistics().get("rejections"));
+    }
+
+    @Test
+    public void testTinyLfuKeepsPopularEntries() {
+        AnnotationCache<String> cache = cache(2 * 100 + 2 * 2, AnnotationCache.EvictionPolicy.TINY_LFU);
+        for (String key : new String[]{"a", "b"}) {
+            for (int i = 0; i < 3; i++) {
+                cache.get(key);
+            }
+            cache.put(key, repeat(key.charAt(0), 100));
+        }
+        // a scan of texts requested only once doesn't replace them
+        for (int i = 0; i < 10; i++) {
+            String key = "scan" + i;
+            if (cache.get(key) == null) {
+                cache.put(key, repeat('x', 100));
+            }
+        }
+
+        assertEquals(repeat('a', 100), cache.get("a"));
+        assertEquals(repeat('b', 100), cache.get("b"));
+        assertEquals(10L, cache.getStatistics().get("rejections"));
+    }
+
+    @Test
+    public void testTinyLfuAdmitsTies() {
+        AnnotationCache<String> cache = cache(2 * 100 + 2 * 2, AnnotationCache.EvictionPolicy.TINY_LFU);
+        // each text is looked up once before being annotated and cached
+        for (String key : new String[]{"a", "b", "c"}) {
+            assertNull(cache.get(key));
+            cache.put(key, repeat(key.charAt(0), 100));
+        }
+
+        assertEquals(repeat('c', 100), cache.get("c"));
+        assertEquals(repeat('b', 100), cache.get("b"));
+        assertNull(cache.get("a"));
+        assertEquals(0L, cache.getStatistics().get("rejections"));
+        assertEquals(1L, cache.getStatistics().get("evictions"));
+    }
+
+    @Test
+    public void testRejectedReplacementKeepsPreviousValue() {
+        AnnotationCache<String> cache = cache(2 * 100 + 2 * 2, AnnotationCache.EvictionPolicy.TINY_LFU);
+        for (String key : new String[]{"a", "b"}) {
+            for (int i = 0; i < 3; i++) {
+                cache.get(key);
+            }
+            cache.put(key, repeat(key.charAt(0), 100));
+        }
+        cache.get("b");
+        // a larger value would push out the entry of "b", which is more popular
+        cache.put("a", repeat('A', 150));
+        assertEquals(repeat('a', 100), cache.get("a"));
+        assertEquals(repeat('b', 100), cache.get("b"));
+        assertEquals(1L, cache.getStatistics().get("rejections"));
+
+        // a value fitting in the room of the previous one replaces it
+        cache.put("a", repeat('A', 100));
+        assertEquals(repeat('A', 100), cache.get("a"));
+        assertEquals(repeat('b', 100), cache.get("b"));
+        assertEquals(2 * 100 + 2 * 2, cache.getBytes());
+    }
+
+    @Test
+    public void testPolicyNames() {
+        assertEquals(AnnotationCache.EvictionPolicy.LRU, AnnotationCache.EvictionPolicy.fromName("lru"));
+        assertEquals(AnnotationCache.EvictionPolicy.TINY_LFU, AnnotationCache.EvictionPolicy.fromName("tinylfu"));
+        assertEquals(AnnotationCache.EvictionPolicy.TINY_LFU, AnnotationCache.EvictionPolicy.fromName("tiny_lfu"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUnknownPolicy() {
+        AnnotationCache.EvictionPolicy.fromName("fifo");
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder result = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            result.append(c);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import opennlp.tools.lemmatizer.DictionaryLemmatizer;
+import opennlp.tools.lemmatizer.Lemmatizer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CachingLemmatizerTest {
+
+    private static final String DICTIONARY = "went\tVBD\tgo\nmen\tNNS\tman\nleft\tVBD\tleave\nleft\tJJ\tleft\n";
+
+    @Test
+    public void testCachedLemmasMatchDictionary() throws IOException {
+        DictionaryLemmatizer dictionary = dictionary();
+        CountingLemmatizer counting = new CountingLemmatizer(dictionary);
+        CachingLemmatizer lemmatizer = new CachingLemmatizer(counting, 1024);
+        String[] words = {"men", "went", "left", "left", "home"};
+        String[] tags = {"NNS", "VBD", "VBD", "JJ", "NN"};
+
+        String[] expected = dictionary.lemmatize(words, tags);
+        assertArrayEquals(expected, lemmatizer.lemmatize(words, tags));
+        assertArrayEquals(expected, lemmatizer.lemmatize(words, tags));
+
+        // only the first sentence went to the dictionary
+        assertEquals(1, counting.calls.size());
+        assertEquals(5L, lemmatizer.getStatistics().get("hits"));
+        assertEquals(5L, lemmatizer.getStatistics().get("misses"));
+    }
+
+    @Test
+    public void testOnlyMissingWordsAreLookedUp() throws IOException {
+        CountingLemmatizer counting = new CountingLemmatizer(dictionary());
+        CachingLemmatizer lemmatizer = new CachingLemmatizer(counting, 1024);
+        lemmatizer.lemmatize(new String[]{"men", "went"}, new String[]{"NNS", "VBD"});
+
+        assertArrayEquals(new String[]{"go", "leave", "man"}, lemmatizer.lemmatize(new String[]{"went", "left", "men"}, new String[]{"VBD", "VBD", "NNS"}));
+        assertArrayEquals(new String[]{"left"}, counting.calls.get(1));
+    }
+
+    @Test
+    public void testDisabledCache() throws IOException {
+        CountingLemmatizer counting = new CountingLemmatizer(dictionary());
+        CachingLemmatizer lemmatizer = new CachingLemmatizer(counting, 0);
+        for (int i = 0; i < 2; i++) {
+            assertArrayEquals(new String[]{"go"}, lemmatizer.lemmatize(new String[]{"went"}, new String[]{"VBD"}));
+        }
+        assertEquals(2, counting.calls.size());
+    }
+
+    private static DictionaryLemmatizer dictionary() throws IOException {
+        return new DictionaryLemmatizer(new ByteArrayInputStream(DICTIONARY.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static class CountingLemmatizer implements Lemmatizer {
+
+        private final Lemmatizer delegate;
+        private final List<String[]> calls = new ArrayList<>();
+
+        CountingLemmatizer(Lemmatizer delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String[] lemmatize(String[] words, String[] posTags) {
+            calls.add(words);
+            return delegate.lemmatize(words, posTags);
+        }
+
+        @Override
+        public List<List<String>> lemmatize(List<String> words, List<String> posTags) {
+            return delegate.lemmatize(words, posTags);
+        }
+    }
+}
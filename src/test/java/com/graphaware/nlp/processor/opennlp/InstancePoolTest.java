@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class InstancePoolTest {
+
+    @Test
+    public void testReleasedInstancesAreReused() {
+        AtomicInteger created = new AtomicInteger();
+        InstancePool<Object> pool = new InstancePool<>(() -> created.incrementAndGet(), 2);
+        Object first = pool.borrow();
+        Object second = pool.borrow();
+        assertNotSame(first, second);
+
+        pool.release(first);
+        assertSame(first, pool.borrow());
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    public void testIdleInstancesAreBounded() {
+        InstancePool<Object> pool = new InstancePool<>(Object::new, 2);
+        Object[] borrowed = {pool.borrow(), pool.borrow(), pool.borrow()};
+        for (Object instance : borrowed) {
+            pool.release(instance);
+        }
+        assertEquals(2, pool.getIdleCount());
+    }
+
+    @Test
+    public void testClosedPoolDropsInstances() {
+        InstancePool<Object> pool = new InstancePool<>(Object::new, 2);
+        Object idle = pool.borrow();
+        Object inUse = pool.borrow();
+        pool.release(idle);
+
+        pool.close();
+        assertEquals(0, pool.getIdleCount());
+        pool.release(inUse);
+        assertEquals(0, pool.getIdleCount());
+        assertNotSame(idle, pool.borrow());
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import opennlp.tools.util.Span;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class NamedEntitySpansTest {
+
+    @Test
+    public void testSpansOfAllModelsAreSortedByStart() {
+        NamedEntitySpans spans = new NamedEntitySpans(2);
+        spans.add(new Span[]{new Span(0, 2, "person"), new Span(5, 6, "person")});
+        spans.add(new Span[]{new Span(3, 4, "location"), new Span(5, 7, "location")});
+        spans.add(new Span[]{new Span(0, 1, "organization")});
+
+        assertEquals(5, spans.size());
+        int[] expectedStarts = {0, 0, 3, 5, 5};
+        int[] expectedEnds = {2, 1, 4, 6, 7};
+        String[] expectedTypes = {"PERSON", "ORGANIZATION", "LOCATION", "PERSON", "LOCATION"};
+        for (int i = 0; i < spans.size(); i++) {
+            assertEquals(expectedStarts[i], spans.getStart(i));
+            assertEquals(expectedEnds[i], spans.getEnd(i));
+            assertEquals(expectedTypes[i], TagVocabulary.NE.getTag(spans.getType(i)));
+        }
+    }
+}
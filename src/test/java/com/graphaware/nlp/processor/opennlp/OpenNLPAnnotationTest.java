@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import opennlp.tools.util.Span;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class OpenNLPAnnotationTest {
+
+    private static final String TEXT = "Hello world. Barack Obama met Merkel.";
+
+    @Test
+    public void testWordsAreMaterializedFromOffsets() {
+        OpenNLPAnnotation.Sentence sentence = secondSentence();
+        assertNull(sentence.getWords());
+        assertEquals(0, sentence.getWordCount());
+
+        // offsets are relative to the sentence
+        sentence.setWordsAndSpans(new Span[]{new Span(0, 6), new Span(7, 12), new Span(13, 16), new Span(17, 23), new Span(23, 24)});
+        assertEquals(5, sentence.getWordCount());
+        String[] words = sentence.getWords();
+        assertArrayEquals(new String[]{"Barack", "Obama", "met", "Merkel", "."}, words);
+        assertSame(words, sentence.getWords());
+        assertEquals(7, sentence.getWordStart(1));
+        assertEquals(12, sentence.getWordEnd(1));
+        assertEquals(-1, sentence.getWordStart(5));
+        assertEquals(-1, sentence.getWordEnd(5));
+        assertArrayEquals(new Span[]{new Span(0, 6), new Span(7, 12), new Span(13, 16), new Span(17, 23), new Span(23, 24)}, sentence.getWordSpans());
+    }
+
+    @Test
+    public void testWordOffsetsReplaceWords() {
+        OpenNLPAnnotation.Sentence sentence = secondSentence();
+        sentence.setWordsAndSpans(new Span[]{new Span(0, 6), new Span(7, 12)});
+        assertArrayEquals(new String[]{"Barack", "Obama"}, sentence.getWords());
+
+        int[] starts = {0, 17};
+        int[] ends = {12, 23};
+        sentence.setWordOffsets(starts, ends);
+        assertSame(starts, sentence.getWordStarts());
+        assertSame(ends, sentence.getWordEnds());
+        assertArrayEquals(new String[]{"Barack Obama", "Merkel"}, sentence.getWords());
+        assertEquals(17, sentence.getWordStart(1));
+        assertEquals(23, sentence.getWordEnd(1));
+    }
+
+    @Test
+    public void testPosTagsWithoutTagging() {
+        OpenNLPAnnotation.Sentence sentence = secondSentence();
+        sentence.setWordsAndSpans(new Span[]{new Span(0, 6), new Span(7, 12)});
+
+        assertNull(sentence.getPosTags());
+        assertNull(sentence.getPosTagIds());
+        assertEquals(-1, sentence.getPosTagId(0));
+    }
+
+    @Test
+    public void testPosTagsAreInterned() {
+        OpenNLPAnnotation.Sentence sentence = secondSentence();
+        sentence.setWordsAndSpans(new Span[]{new Span(0, 6), new Span(7, 12), new Span(13, 16)});
+        sentence.setPosTags(new String[]{"NNP", null, "VBD"});
+
+        assertEquals(TagVocabulary.POS.getId("NNP"), sentence.getPosTagId(0));
+        assertEquals(-1, sentence.getPosTagId(1));
+        assertEquals(TagVocabulary.POS.getId("VBD"), sentence.getPosTagId(2));
+        assertArrayEquals(new String[]{"NNP", null, "VBD"}, sentence.getPosTags());
+
+        int[] ids = {TagVocabulary.POS.getId("VBD"), -1, -1};
+        sentence.setPosTagIds(ids);
+        assertSame(ids, sentence.getPosTagIds());
+        assertArrayEquals(new String[]{"VBD", null, null}, sentence.getPosTags());
+
+        sentence.setPosTags(null);
+        assertNull(sentence.getPosTags());
+        assertEquals(-1, sentence.getPosTagId(0));
+    }
+
+    private static OpenNLPAnnotation.Sentence secondSentence() {
+        OpenNLPAnnotation document = new OpenNLPAnnotation(TEXT);
+        document.setSentences(new Span[]{new Span(0, 12), new Span(13, TEXT.length())});
+        OpenNLPAnnotation.Sentence sentence = document.getSentences().get(1);
+        assertEquals("Barack Obama met Merkel.", sentence.getSentence());
+        return sentence;
+    }
+}
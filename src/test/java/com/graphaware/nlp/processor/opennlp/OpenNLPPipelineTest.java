@@ -8,6 +8,29 @@ package com.graphaware.nlp.processor.opennlp;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import com.graphaware.nlp.processor.opennlp.model.LemmaDictionary;
 import opennlp.tools.namefind.NameFinderME;
 import opennlp.tools.namefind.TokenNameFinderModel;
 import opennlp.tools.tokenize.Tokenizer;
@@ -20,6 +43,11 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 /**
  *
  * @author ale
@@ -157,4 +185,408 @@ public class OpenNLPPipelineTest {
         });
     }
 
+    @Test
+    public void testConcurrentAnnotate() throws Exception {
+        String text = "Hello Dralyn. Barack Hussein Obama II  is the 44th and current President of the United States, and the first African American to hold the office.";
+        OpenNLPPipeline instance = new PipelineBuilder()
+                .tokenize()
+                .extractNEs()
+                .build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<String> expected = annotateWords(instance, text);
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(() -> annotateWords(instance, text)));
+            }
+            for (Future<List<String>> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+            instance.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentCallersAreNotLimitedToThreads() throws Exception {
+        String text = "Hello Dralyn. Barack Obama met Angela Merkel in Berlin. The meeting was short.";
+        int callers = 6;
+        OpenNLPPipeline instance = new PipelineBuilder()
+                .tokenize()
+                .threadNumber(2)
+                .build();
+        // each document blocks in its first sentence until all of them got there, which needs more than 2 threads
+        CyclicBarrier allDocuments = new CyclicBarrier(callers);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> {
+                    OpenNLPAnnotation document = new OpenNLPAnnotation(text);
+                    AtomicBoolean first = new AtomicBoolean(true);
+                    document.setTokenEmitter(sentence -> {
+                        if (first.getAndSet(false)) {
+                            try {
+                                allDocuments.await(30, TimeUnit.SECONDS);
+                            } catch (InterruptedException | BrokenBarrierException | TimeoutException ex) {
+                                throw new RuntimeException("Documents were not annotated concurrently", ex);
+                            }
+                        }
+                        return (value, lemma, neType, firstWord, endWord, begin, end) -> {
+                        };
+                    });
+                    instance.annotate(document);
+                    assertEquals(3, document.getSentences().size());
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            instance.close();
+        }
+    }
+
+    @Test
+    public void testParallelSentencesKeepOrder() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append("Sentence number ").append(i).append(" talks about the current President of the United States. ");
+        }
+        OpenNLPPipeline sequential = new PipelineBuilder()
+                .tokenize()
+                .threadNumber(1)
+                .build();
+        OpenNLPPipeline parallel = new PipelineBuilder()
+                .tokenize()
+                .threadNumber(4)
+                .build();
+        try {
+            assertEquals(annotateTags(sequential, text.toString()), annotateTags(parallel, text.toString()));
+        } finally {
+            sequential.close();
+            parallel.close();
+        }
+    }
+
+    @Test
+    public void testOnlyRequiredModelsAreLoaded() {
+        OpenNLPPipeline instance = new PipelineBuilder()
+                .tokenize()
+                .build();
+        try {
+            assertNotNull(instance.sentenceModel);
+            assertNotNull(instance.tokenizerModel);
+            assertNotNull(instance.posModel);
+            assertNotNull(instance.lemmaDetector);
+            assertNull(instance.chunkerModel);
+            assertNull(instance.sentimentModel);
+            assertTrue(instance.nameFinderModels.isEmpty());
+        } finally {
+            instance.close();
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUnknownAnnotatorFailsAtBuild() {
+        Properties properties = new Properties();
+        properties.setProperty("annotators", "tokenize, pos, lema");
+        new OpenNLPPipeline(properties);
+    }
+
+    @Test
+    public void testAnnotatorsAreParsedOnce() {
+        assertEquals(EnumSet.of(Annotator.TOKENIZE, Annotator.POS, Annotator.NER), Annotator.parse(" ner, tokenize,, POS "));
+        assertEquals("tokenize, pos, lemma, ner", Annotator.toString(Annotator.parse("ner, lemma, pos, tokenize")));
+    }
+
+    @Test
+    public void testParallelNER() {
+        String text = "Barack Hussein Obama II  is the 44th and current President of the United States, and the first African American to hold the office.";
+        OpenNLPPipeline sequential = new PipelineBuilder()
+                .tokenize()
+                .extractNEs()
+                .threadNumber(1)
+                .build();
+        OpenNLPPipeline parallel = new PipelineBuilder()
+                .tokenize()
+                .extractNEs()
+                .parallelNER()
+                .threadNumber(1)
+                .build();
+        try {
+            assertEquals(annotateNEs(sequential, text), annotateNEs(parallel, text));
+        } finally {
+            sequential.close();
+            parallel.close();
+        }
+    }
+
+    @Test
+    public void testCategorizeMatchesAnnotate() {
+        String text = "I love this movie. This is the worst day ever. The weather is nice today.";
+        OpenNLPPipeline instance = new PipelineBuilder()
+                .tokenize()
+                .extractSentiment()
+                .threadNumber(4)
+                .build();
+        try {
+            OpenNLPAnnotation document = new OpenNLPAnnotation(text);
+            instance.annotate(document);
+            List<String> sentences = document.getSentences().stream()
+                    .map(OpenNLPAnnotation.Sentence::getSentence)
+                    .collect(Collectors.toList());
+            List<String> expected = document.getSentences().stream()
+                    .map(OpenNLPAnnotation.Sentence::getSentiment)
+                    .collect(Collectors.toList());
+
+            assertEquals(expected, instance.categorize(sentences, OpenNLPAnnotation.DEFAULT_SENTIMENT_PROBTHR));
+        } finally {
+            instance.close();
+        }
+    }
+
+    @Test
+    public void testAdaptiveDataIsScopedToDocument() {
+        String text = "Barack Hussein Obama II  is the 44th and current President of the United States, and the first African American to hold the office.";
+        String other = "Hello Dralyn. Barack Obama met Angela Merkel in Berlin on Monday, 5 June 2017 and paid 20% more than 1000 dollars.";
+        OpenNLPPipeline instance = new PipelineBuilder()
+                .tokenize()
+                .extractNEs()
+                .threadNumber(1)
+                .build();
+        try {
+            Map<String, Set<String>> expected = annotateNEs(instance, text);
+            for (int i = 0; i < 5; i++) {
+                annotateNEs(instance, other);
+            }
+            assertEquals(expected, annotateNEs(instance, text));
+        } finally {
+            instance.close();
+        }
+    }
+
+    @Test
+    public void testAdaptiveDataIsScopedToBatch() {
+        String text = "Barack Hussein Obama II  is the 44th and current President of the United States, and the first African American to hold the office.";
+        String other = "Hello Dralyn. Barack Obama met Angela Merkel in Berlin on Monday, 5 June 2017 and paid 20% more than 1000 dollars.";
+        OpenNLPPipeline instance = new PipelineBuilder()
+                .tokenize()
+                .extractNEs()
+                .adaptiveData("batch")
+                .threadNumber(1)
+                .build();
+        try {
+            Map<String, Set<String>> expected = annotateNEs(instance, text, instance.newBatch());
+            // a batch started in between, as a concurrent caller would do, doesn't leak into the others
+            long batch = instance.newBatch();
+            long concurrent = instance.newBatch();
+            for (int i = 0; i < 5; i++) {
+                annotateNEs(instance, other, concurrent);
+            }
+            assertEquals(expected, annotateNEs(instance, text, batch));
+        } finally {
+            instance.close();
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidAdaptiveDataScope() {
+        new PipelineBuilder()
+                .tokenize()
+                .adaptiveData("forever")
+                .build();
+    }
+
+    @Test
+    public void testSentenceCacheGivesSameAnnotation() {
+        String text = "Click here to subscribe. Barack Obama met Angela Merkel in Berlin. Click here to subscribe. "
+                + "Barack Obama met Angela Merkel in Berlin.";
+        OpenNLPPipeline reference = new PipelineBuilder()
+                .tokenize()
+                .extractNEs()
+                .extractSentiment()
+                .threadNumber(1)
+                .build();
+        OpenNLPPipeline memoizing = new PipelineBuilder()
+                .tokenize()
+                .extractNEs()
+                .extractSentiment()
+                .sentenceCache("1m")
+                .threadNumber(1)
+                .build();
+        try {
+            List<String> expected = annotateTokens(reference, text);
+            assertEquals(expected, annotateTokens(memoizing, text));
+            assertEquals(expected, annotateTokens(memoizing, text));
+            assertEquals(6L, memoizing.getSentenceCacheStatistics().get("hits"));
+            assertTrue(reference.getSentenceCacheStatistics().isEmpty());
+        } finally {
+            reference.close();
+            memoizing.close();
+        }
+    }
+
+    @Test
+    public void testSentenceCacheKeepsDocumentContext() {
+        // the name finders of a document learn from its earlier sentences, so the entities of the repeated sentence
+        // depend on the document it appears in
+        String first = "He lives in Washington near Jordan. Jordan met Washington.";
+        String second = "Paris Hilton met Chelsea Clinton. Jordan met Washington.";
+        OpenNLPPipeline reference = new PipelineBuilder()
+                .tokenize()
+                .extractNEs()
+                .threadNumber(1)
+                .build();
+        OpenNLPPipeline memoizing = new PipelineBuilder()
+                .tokenize()
+                .extractNEs()
+                .sentenceCache("1m")
+                .threadNumber(1)
+                .build();
+        try {
+            assertEquals(annotateTokens(reference, first), annotateTokens(memoizing, first));
+            assertEquals(annotateTokens(reference, second), annotateTokens(memoizing, second));
+            assertEquals(1L, memoizing.getSentenceCacheStatistics().get("hits"));
+        } finally {
+            reference.close();
+            memoizing.close();
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidSentenceCacheSize() {
+        new PipelineBuilder()
+                .tokenize()
+                .sentenceCache("a lot")
+                .build();
+    }
+
+    @Test
+    public void testCompiledLemmaDictionary() throws IOException {
+        String text = "Barack Obama said the men went home. They left.";
+        Path file = Files.createTempFile("en-lemmatizer", LemmaDictionary.EXTENSION);
+        try {
+            try (InputStream in = OpenNLPPipeline.class.getResourceAsStream("en-lemmatizer.dict");
+                    OutputStream out = Files.newOutputStream(file)) {
+                LemmaDictionary.compile(in, out);
+            }
+            OpenNLPPipeline reference = new PipelineBuilder()
+                    .tokenize()
+                    .threadNumber(1)
+                    .build();
+            OpenNLPPipeline compiled = new PipelineBuilder()
+                    .tokenize()
+                    .lemmatizer(file.toAbsolutePath().toString())
+                    .threadNumber(1)
+                    .build();
+            try {
+                assertEquals(annotateTags(reference, text), annotateTags(compiled, text));
+            } finally {
+                reference.close();
+                compiled.close();
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testTokenValuesAndLemmas() {
+        String text = "Barack Obama met Angela Merkel in BERLIN on Monday. The Men went home to Paris.";
+        OpenNLPPipeline instance = new PipelineBuilder()
+                .tokenize()
+                .extractNEs()
+                .threadNumber(1)
+                .build();
+        try {
+            OpenNLPAnnotation document = new OpenNLPAnnotation(text);
+            instance.annotate(document);
+
+            for (OpenNLPAnnotation.Sentence sentence : document.getSentences()) {
+                String[] words = sentence.getWords();
+                String[] lemmas = sentence.getLemmas();
+                for (OpenNLPAnnotation.Token token : sentence.getTokens()) {
+                    for (Span span : token.getTokenSpans()) {
+                        // words covered by the token, its value and lemma as processTokens always built them
+                        int first = 0;
+                        while (sentence.getWordStart(first) != span.getStart()) {
+                            first++;
+                        }
+                        StringBuilder value = new StringBuilder();
+                        StringBuilder lemma = new StringBuilder();
+                        int last = first;
+                        for (; sentence.getWordEnd(last) != span.getEnd(); last++) {
+                            value.append(' ').append(words[last].trim());
+                            lemma.append(' ').append(lemmas[last].equals(OpenNLPAnnotation.DEFAULT_LEMMA_OPEN_NLP) ? words[last].toLowerCase().trim() : lemmas[last].trim());
+                        }
+                        value.append(' ').append(words[last].trim());
+                        lemma.append(' ').append(lemmas[last].equals(OpenNLPAnnotation.DEFAULT_LEMMA_OPEN_NLP) ? words[last].toLowerCase().trim() : lemmas[last].trim());
+                        assertEquals(value.toString().trim(), token.getToken());
+                        assertEquals(lemma.toString().trim(), token.getTokenLemmas());
+                    }
+                }
+            }
+        } finally {
+            instance.close();
+        }
+    }
+
+    @Test
+    public void testAppendTrimmed() {
+        String[] values = {"Word", "  MiXeD Case\t", "", " ", "\u00c9T\u00c9", "\u039f\u0394\u039f\u03a3 ", "\u0130stanbul", "a\u00a0B"};
+        for (String value : values) {
+            assertEquals("x" + value.trim(), OpenNLPPipeline.appendTrimmed(new StringBuilder("x"), value).toString());
+            assertEquals("x" + value.toLowerCase().trim(), OpenNLPPipeline.appendLowerCaseTrimmed(new StringBuilder("x"), value).toString());
+            assertEquals(value.trim(), OpenNLPPipeline.trimmed(new StringBuilder(value)));
+        }
+    }
+
+    private List<String> annotateTokens(OpenNLPPipeline pipeline, String text) {
+        OpenNLPAnnotation document = new OpenNLPAnnotation(text);
+        pipeline.annotate(document);
+        return document.getSentences().stream()
+                .map(sentence -> sentence.getSentence() + " " + sentence.getSentiment() + " " + sentence.getTokens().stream()
+                        .map(token -> token.getToken() + "/" + token.getTokenLemmas() + "/" + token.getTokenPOS() + "/"
+                                + new TreeSet<>(token.getTokenNEs()) + "/" + token.getTokenSpans())
+                        .sorted()
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+
+    private Map<String, Set<String>> annotateNEs(OpenNLPPipeline pipeline, String text) {
+        return annotateNEs(pipeline, text, pipeline.newBatch());
+    }
+
+    private Map<String, Set<String>> annotateNEs(OpenNLPPipeline pipeline, String text, long batch) {
+        OpenNLPAnnotation document = new OpenNLPAnnotation(text);
+        pipeline.annotate(document, batch);
+        Map<String, Set<String>> result = new HashMap<>();
+        document.getSentences().forEach(sentence -> sentence.getTokens().forEach(token -> {
+            result.put(token.getToken(), new HashSet<>(token.getTokenNEs()));
+        }));
+        return result;
+    }
+
+    private List<String> annotateTags(OpenNLPPipeline pipeline, String text) {
+        OpenNLPAnnotation document = new OpenNLPAnnotation(text);
+        pipeline.annotate(document);
+        return document.getSentences().stream()
+                .map(sentence -> sentence.getSentence() + " " + Arrays.toString(sentence.getWords())
+                        + " " + Arrays.toString(sentence.getPosTags()) + " " + Arrays.toString(sentence.getLemmas()))
+                .collect(Collectors.toList());
+    }
+
+    private List<String> annotateWords(OpenNLPPipeline pipeline, String text) {
+        OpenNLPAnnotation document = new OpenNLPAnnotation(text);
+        pipeline.annotate(document);
+        return document.getSentences().stream()
+                .map(sentence -> sentence.getSentence() + " " + Arrays.toString(sentence.getWords()))
+                .collect(Collectors.toList());
+    }
+
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import opennlp.tools.namefind.BioCodec;
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.NameSample;
+import opennlp.tools.namefind.TokenNameFinderFactory;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.util.ObjectStreamUtils;
+import opennlp.tools.util.Span;
+import opennlp.tools.util.TrainingParameters;
+import opennlp.tools.util.featuregen.AggregatedFeatureGenerator;
+import opennlp.tools.util.featuregen.DocumentBeginFeatureGenerator;
+import opennlp.tools.util.featuregen.PreviousMapFeatureGenerator;
+import opennlp.tools.util.featuregen.TokenClassFeatureGenerator;
+import opennlp.tools.util.featuregen.TokenFeatureGenerator;
+import opennlp.tools.util.featuregen.WindowFeatureGenerator;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SharedFeatureNameFinderTest {
+
+    private static final String[] MODELS = {"en-ner-person.bin", "en-ner-location.bin", "en-ner-organization.bin", "en-ner-date.bin"};
+
+    private static final String[][] SENTENCES = {
+        {"Barack", "Obama", "met", "Angela", "Merkel", "in", "Berlin", "on", "Monday", "."},
+        {"Obama", "paid", "20", "%", "more", "than", "1000", "dollars", "to", "Microsoft", "."},
+        {"Angela", "Merkel", "left", "Paris", "at", "5", "pm", "."},
+    };
+
+    // default descriptor of OpenNLP plus the document begin marker, which is reset by clearAdaptiveData
+    private static final String DOCUMENT_BEGIN_DESCRIPTOR = "<generators><cache><generators>"
+            + "<window prevLength=\"2\" nextLength=\"2\"><tokenclass/></window>"
+            + "<window prevLength=\"2\" nextLength=\"2\"><token/></window>"
+            + "<definition/><prevmap/><bigram/><sentence begin=\"true\" end=\"false\"/><docbegin/>"
+            + "</generators></cache></generators>";
+
+    private static final String[] TRAINING = {
+        "<START:person> Barack Obama <END> met <START:person> Angela Merkel <END> in Berlin .",
+        "<START:person> Angela Merkel <END> left Paris at 5 pm .",
+        "Yesterday <START:person> Obama <END> paid 20 % more .",
+        "<START:person> Merkel <END> met <START:person> Barack Obama <END> .",
+        "The meeting was short .",
+    };
+
+    @Test
+    public void testSameEntitiesAsNameFinder() throws IOException {
+        List<TokenNameFinderModel> models = new ArrayList<>();
+        for (String name : MODELS) {
+            try (InputStream in = OpenNLPPipeline.class.getResourceAsStream(name)) {
+                models.add(new TokenNameFinderModel(in));
+            }
+        }
+        SharedFeatureNameFinder.Ensemble ensemble = new SharedFeatureNameFinder.Ensemble();
+        List<NameFinderME> shared = new ArrayList<>();
+        List<NameFinderME> reference = new ArrayList<>();
+        for (TokenNameFinderModel model : models) {
+            shared.add(ensemble.createNameFinder(model));
+            reference.add(new NameFinderME(model));
+        }
+        assertTrue(shared.stream().allMatch(finder -> finder instanceof SharedFeatureNameFinder));
+
+        // twice, so the second pass runs with the adaptive data of the first one, then without any
+        for (int pass = 0; pass < 3; pass++) {
+            if (pass == 2) {
+                shared.forEach(NameFinderME::clearAdaptiveData);
+                reference.forEach(NameFinderME::clearAdaptiveData);
+            }
+            for (String[] sentence : SENTENCES) {
+                String[] words = sentence.clone();
+                for (int i = 0; i < models.size(); i++) {
+                    assertEquals(Arrays.asList(reference.get(i).find(words)), Arrays.asList(shared.get(i).find(words)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReusedArrayGetsFreshFeatures() throws IOException {
+        SharedFeatureNameFinder.Ensemble ensemble = new SharedFeatureNameFinder.Ensemble();
+        List<NameFinderME> shared = new ArrayList<>();
+        List<TokenNameFinderModel> models = new ArrayList<>();
+        for (String name : MODELS) {
+            try (InputStream in = OpenNLPPipeline.class.getResourceAsStream(name)) {
+                models.add(new TokenNameFinderModel(in));
+            }
+            shared.add(ensemble.createNameFinder(models.get(models.size() - 1)));
+        }
+        // the first finder sees the array with the words of one sentence, the others with the words of another one
+        String[] next = SENTENCES[2];
+        String[] reused = {"Barack", "Obama", "met", "Angela", "Merkel", "in", "Berlin", "."};
+        shared.get(0).find(reused);
+        System.arraycopy(next, 0, reused, 0, next.length);
+        for (int i = 1; i < models.size(); i++) {
+            assertEquals(Arrays.asList(new NameFinderME(models.get(i)).find(next.clone())), Arrays.asList(shared.get(i).find(reused)));
+        }
+    }
+
+    @Test
+    public void testOnlyStatelessGeneratorsAreShared() {
+        assertTrue(SharedFeatureNameFinder.isShareable(new TokenFeatureGenerator()));
+        assertTrue(SharedFeatureNameFinder.isShareable(new WindowFeatureGenerator(new TokenClassFeatureGenerator(true), 2, 2)));
+        assertTrue(SharedFeatureNameFinder.isShareable(new WindowFeatureGenerator(2, 2, new TokenFeatureGenerator(), new TokenClassFeatureGenerator(true))));
+        assertFalse(SharedFeatureNameFinder.isShareable(new DocumentBeginFeatureGenerator()));
+        assertFalse(SharedFeatureNameFinder.isShareable(new PreviousMapFeatureGenerator()));
+        assertFalse(SharedFeatureNameFinder.isShareable(new WindowFeatureGenerator(new DocumentBeginFeatureGenerator(), 2, 2)));
+        assertFalse(SharedFeatureNameFinder.isShareable(new AggregatedFeatureGenerator(new TokenFeatureGenerator(), new DocumentBeginFeatureGenerator())));
+    }
+
+    @Test
+    public void testDocumentBeginIsNotShared() throws IOException {
+        TokenNameFinderModel model = train(DOCUMENT_BEGIN_DESCRIPTOR);
+        NameFinderME shared = new SharedFeatureNameFinder.Ensemble().createNameFinder(model);
+        NameFinderME reference = new NameFinderME(model);
+        assertTrue(shared instanceof SharedFeatureNameFinder);
+
+        // each document starts with cleared adaptive data, so its first sentence gets the document begin feature again
+        for (int document = 0; document < 3; document++) {
+            shared.clearAdaptiveData();
+            reference.clearAdaptiveData();
+            for (String[] sentence : SENTENCES) {
+                String[] words = sentence.clone();
+                Span[] expected = reference.find(words);
+                Span[] actual = shared.find(words);
+                assertEquals(Arrays.asList(expected), Arrays.asList(actual));
+                assertEquals(Arrays.toString(reference.probs(expected)), Arrays.toString(shared.probs(actual)));
+            }
+        }
+    }
+
+    @Test
+    public void testStatelessModels() throws IOException {
+        try (InputStream in = OpenNLPPipeline.class.getResourceAsStream(MODELS[0])) {
+            // the default descriptor has the previous map
+            assertFalse(SharedFeatureNameFinder.isStateless(new TokenNameFinderModel(in)));
+        }
+        assertFalse(SharedFeatureNameFinder.isStateless(train(DOCUMENT_BEGIN_DESCRIPTOR)));
+        assertTrue(SharedFeatureNameFinder.isStateless(train("<generators><cache><generators>"
+                + "<window prevLength=\"2\" nextLength=\"2\"><token/></window><bigram/>"
+                + "</generators></cache></generators>")));
+    }
+
+    private static TokenNameFinderModel train(String descriptor) throws IOException {
+        List<NameSample> samples = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            for (String line : TRAINING) {
+                samples.add(NameSample.parse(line, i % TRAINING.length == 0));
+            }
+        }
+        TrainingParameters parameters = TrainingParameters.defaultParams();
+        parameters.put(TrainingParameters.CUTOFF_PARAM, "0");
+        parameters.put(TrainingParameters.ITERATIONS_PARAM, "20");
+        parameters.put("PrintMessages", "false");
+        TokenNameFinderFactory factory = TokenNameFinderFactory.create(null, descriptor.getBytes(StandardCharsets.UTF_8),
+                Collections.emptyMap(), new BioCodec());
+        return NameFinderME.train("en", null, ObjectStreamUtils.createObjectStream(samples), parameters, factory);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StopWordSetTest {
+
+    @Test
+    public void testCaseInsensitiveLookup() {
+        StopWordSet stopWords = StopWordSet.of(Arrays.asList(" The", "and ", "OF", ""));
+
+        assertEquals(3, stopWords.size());
+        assertTrue(stopWords.contains("the"));
+        assertTrue(stopWords.contains("THE"));
+        assertTrue(stopWords.contains(new StringBuilder("And")));
+        assertTrue(stopWords.contains("of"));
+        assertFalse(stopWords.contains("then"));
+        assertFalse(stopWords.contains(""));
+        assertFalse(stopWords.contains(null));
+    }
+
+    @Test
+    public void testLargeList() {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            words.add("word" + i);
+        }
+        StopWordSet stopWords = StopWordSet.of(words);
+
+        assertEquals(words.size(), stopWords.size());
+        words.forEach(word -> assertTrue(stopWords.contains(word.toUpperCase())));
+        assertFalse(stopWords.contains("word5000"));
+    }
+
+    @Test
+    public void testSetsAreShared() {
+        assertSame(StopWordSet.of(Arrays.asList("a", "an", "the")), StopWordSet.of(Arrays.asList("THE", "a", "an", "a")));
+        assertSame(StopWordSet.EMPTY, StopWordSet.of(Arrays.asList("")));
+    }
+
+    @Test
+    public void testUnusedSetsAreReleased() throws InterruptedException {
+        StopWordSet stopWords = StopWordSet.of(Arrays.asList("released", "stop", "words"));
+        WeakReference<StopWordSet> reference = new WeakReference<>(stopWords);
+        int shared = StopWordSet.getSharedCount();
+        stopWords = null;
+
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+        for (int i = 0; i < 50 && StopWordSet.getSharedCount() >= shared; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(StopWordSet.getSharedCount() < shared);
+        assertEquals(3, StopWordSet.of(Arrays.asList("released", "stop", "words")).size());
+    }
+}
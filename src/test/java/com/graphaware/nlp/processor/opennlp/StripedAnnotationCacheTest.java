@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StripedAnnotationCacheTest {
+
+    @Test
+    public void testSmallBudgetUsesOneSegment() {
+        StripedAnnotationCache<String> cache = new StripedAnnotationCache<>(1024, AnnotationCache.EvictionPolicy.LRU, String::length);
+
+        assertEquals(1, cache.getSegmentCount());
+        cache.put("a", "value");
+        assertEquals("value", cache.get("a"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void testStatisticsAreSummed() {
+        StripedAnnotationCache<String> cache = new StripedAnnotationCache<>(64L * 1024 * 1024, AnnotationCache.EvictionPolicy.TINY_LFU, String::length);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals("value" + i, cache.get("key" + i));
+        }
+        assertNull(cache.get("missing"));
+
+        Map<String, Object> statistics = cache.getStatistics();
+        assertEquals(100L, statistics.get("hits"));
+        assertEquals(1L, statistics.get("misses"));
+        assertEquals(100, statistics.get("entries"));
+        assertEquals(64L * 1024 * 1024, statistics.get("maxBytes"));
+        assertEquals("tiny_lfu", statistics.get("policy"));
+        assertEquals(100.0 / 101, (Double) statistics.get("hitRate"), 1e-9);
+        assertEquals(cache.getSegmentCount(), statistics.get("segments"));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        StripedAnnotationCache<String> cache = new StripedAnnotationCache<>(16L * 1024 * 1024, AnnotationCache.EvictionPolicy.LRU, String::length);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                final int offset = thread * 1000;
+                results.add(executor.submit(() -> {
+                    for (int i = offset; i < offset + 1000; i++) {
+                        cache.put("key" + i, "value" + i);
+                        assertEquals("value" + i, cache.get("key" + i));
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Map<String, Object> statistics = cache.getStatistics();
+        assertEquals(8000L, statistics.get("hits"));
+        assertTrue((Long) statistics.get("bytes") <= 16L * 1024 * 1024);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TagInternerTest {
+
+    @Test
+    public void testValuesAreShared() {
+        TagInterner interner = new TagInterner();
+        String lemma = interner.lemma("president");
+
+        assertSame(lemma, interner.lemma(new String("president")));
+
+        List<String> pos = new ArrayList<>(Arrays.asList("NNP", "NN"));
+        List<String> shared = interner.tags(pos);
+        assertEquals(pos, shared);
+        assertNotSame(pos, shared);
+        assertSame(shared, interner.tags(Arrays.asList("NNP", "NN")));
+        assertNotSame(shared, interner.tags(Arrays.asList("NN", "NNP")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSharedListsAreUnmodifiable() {
+        new TagInterner().tags(Arrays.asList("PERSON")).add("LOCATION");
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TagVocabularyTest {
+
+    @Test
+    public void testTagsAreInterned() {
+        TagVocabulary vocabulary = new TagVocabulary();
+        int id = vocabulary.getId("NNP");
+
+        assertEquals(id, vocabulary.getId(new String("NNP")));
+        assertSame("NNP", vocabulary.getTag(id));
+        assertEquals(Arrays.asList("NNP"), vocabulary.getTags(1L << id, null));
+    }
+
+    @Test
+    public void testTokenTagsBeyondMaskSize() {
+        // a vocabulary of its own, the shared one must not be filled with test tags
+        TagVocabulary vocabulary = new TagVocabulary();
+        int sharedSize = TagVocabulary.NE.size();
+        OpenNLPAnnotation.Token token = new OpenNLPAnnotation("", null, new TagVocabulary(), vocabulary).getToken("token", "token");
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < TagVocabulary.MASK_SIZE + 10; i++) {
+            token.addTokenNE("TYPE_" + i);
+            expected.add("TYPE_" + i);
+        }
+        token.addTokenNE("TYPE_0");
+
+        assertEquals(expected.size(), token.getTokenNEs().size());
+        assertEquals(expected, new HashSet<>(token.getTokenNEs()));
+        assertEquals(expected.size(), vocabulary.size());
+        assertEquals(sharedSize, TagVocabulary.NE.size());
+    }
+}
@@ -25,9 +25,19 @@ import com.graphaware.nlp.util.ServiceLoader;
 import com.graphaware.nlp.util.TestAnnotatedText;
 import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -40,7 +50,9 @@ import org.neo4j.graphdb.Transaction;
 import static com.graphaware.nlp.util.TagUtils.newTag;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class TextProcessorTest extends OpenNLPIntegrationTest {
 
@@ -242,6 +254,163 @@ public class TextProcessorTest extends OpenNLPIntegrationTest {
 
     }
 
+    @Test
+    public void testAnnotateTextsKeepsInputOrder() {
+        List<String> texts = Arrays.asList(
+                "Fixing Batch Endpoint Logging Problem",
+                "Importing CSV data does nothing",
+                "The chart in Figure 1 shows varying sentiment on the candidates.");
+        OpenNLPTextProcessor processor = (OpenNLPTextProcessor) textProcessor;
+        Map<String, Object> before = processor.getBatchStatistics();
+        List<AnnotatedText> annotatedTexts = processor.annotateTexts(texts, "en", PIPELINE_DEFAULT);
+
+        assertEquals(texts.size(), annotatedTexts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(1, annotatedTexts.get(i).getSentences().size());
+            assertEquals(texts.get(i), annotatedTexts.get(i).getSentences().get(0).getSentence());
+        }
+        Map<String, Object> after = processor.getBatchStatistics();
+        assertEquals((long) before.get("batches") + 1, after.get("batches"));
+        assertEquals((long) before.get("texts") + texts.size(), after.get("texts"));
+    }
+
+    @Test
+    public void testAnnotateTextAsync() throws Exception {
+        List<CompletableFuture<AnnotatedText>> results = new ArrayList<>();
+        List<String> texts = Arrays.asList(
+                "Fixing Batch Endpoint Logging Problem",
+                "Importing CSV data does nothing");
+        for (String text : texts) {
+            results.add(((OpenNLPTextProcessor) textProcessor).annotateTextAsync(text, "en", PIPELINE_DEFAULT));
+        }
+        for (int i = 0; i < texts.size(); i++) {
+            AnnotatedText annotatedText = results.get(i).get();
+            assertEquals(1, annotatedText.getSentences().size());
+            assertEquals(texts.get(i), annotatedText.getSentences().get(0).getSentence());
+        }
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        OpenNLPTextProcessor processor = new OpenNLPTextProcessor();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            processor.setAsyncExecutor(executor);
+            assertEquals(1, processor.annotateTextAsync("Importing CSV data does nothing", "en", PIPELINE_DEFAULT).get().getSentences().size());
+            assertEquals(1, processor.annotateTexts(Arrays.asList("Importing CSV data does nothing"), "en", PIPELINE_DEFAULT).size());
+
+            processor.shutdown();
+            assertTrue(processor.getPipelines().isEmpty());
+            // executors given by the application are left running
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentPipelineCreation() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        OpenNLPTextProcessor processor = new OpenNLPTextProcessor() {
+            @Override
+            protected OpenNLPPipeline buildPipeline(PipelineSpecification pipelineSpecification) {
+                builds.incrementAndGet();
+                return super.buildPipeline(pipelineSpecification);
+            }
+        };
+        Map<String, Object> processingSteps = new HashMap<>();
+        processingSteps.put(AbstractTextProcessor.STEP_TOKENIZE, true);
+        PipelineSpecification specification = new PipelineSpecification("concurrent", OpenNLPTextProcessor.class.getName(), processingSteps, null, 1L, Collections.emptyList(), Collections.emptyList());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<AnnotatedText>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return processor.annotateText("Importing CSV data does nothing", "en", specification);
+                }));
+            }
+            start.countDown();
+            for (Future<AnnotatedText> result : results) {
+                assertEquals(1, result.get().getSentences().size());
+            }
+            assertEquals(1, builds.get());
+            assertEquals(Collections.singletonList("concurrent"), processor.getPipelines());
+        } finally {
+            executor.shutdownNow();
+            processor.removePipeline("concurrent");
+        }
+        assertFalse(processor.checkPipeline("concurrent"));
+    }
+
+    @Test
+    public void testWarmupDoesNotRegisterPipelines() throws InterruptedException {
+        System.setProperty(OpenNLPTextProcessor.WARMUP_PROPERTY, OpenNLPTextProcessor.TOKENIZER + ",unknown");
+        OpenNLPTextProcessor processor = new OpenNLPTextProcessor();
+        try {
+            processor.init();
+            assertTrue(processor.awaitWarmup(1, TimeUnit.MINUTES));
+            assertTrue(processor.getPipelines().isEmpty());
+            assertFalse(processor.checkPipeline(OpenNLPTextProcessor.TOKENIZER));
+        } finally {
+            System.clearProperty(OpenNLPTextProcessor.WARMUP_PROPERTY);
+            processor.shutdown();
+        }
+    }
+
+    @Test
+    public void testAnnotationCache() {
+        OpenNLPTextProcessor processor = (OpenNLPTextProcessor) textProcessor;
+        String text = "Barack Obama is born in Hawaii. He is our president.";
+        processor.setAnnotationCache(1024 * 1024, "lru");
+        try {
+            AnnotatedText first = processor.annotateText(text, "en", PIPELINE_DEFAULT);
+            AnnotatedText second = processor.annotateText(text, "en", PIPELINE_DEFAULT);
+
+            assertNotSame(first, second);
+            assertNotSame(first.getSentences().get(0), second.getSentences().get(0));
+            assertEquals(first.getSentences().size(), second.getSentences().size());
+            for (int i = 0; i < first.getSentences().size(); i++) {
+                Sentence expected = first.getSentences().get(i);
+                Sentence actual = second.getSentences().get(i);
+                assertEquals(expected.getSentence(), actual.getSentence());
+                assertEquals(describeTags(expected), describeTags(actual));
+                assertEquals(describeOccurrences(expected), describeOccurrences(actual));
+            }
+            Map<String, Object> statistics = processor.getAnnotationCacheStatistics();
+            assertEquals(1L, statistics.get("hits"));
+            assertEquals(1L, statistics.get("misses"));
+        } finally {
+            processor.setAnnotationCache(0, null);
+        }
+        assertTrue(processor.getAnnotationCacheStatistics().isEmpty());
+    }
+
+    private static List<String> describeTags(Sentence sentence) {
+        List<String> result = new ArrayList<>();
+        sentence.getTags().forEach(tag -> result.add(describe(tag)));
+        Collections.sort(result);
+        return result;
+    }
+
+    /*
+     * Occurrences by start offset, with their values and the tag starting there.
+     */
+    private static List<String> describeOccurrences(Sentence sentence) {
+        List<String> result = new ArrayList<>();
+        sentence.getTagOccurrences().keySet().stream().sorted().forEach(begin -> {
+            List<String> values = new ArrayList<>();
+            sentence.getTagOccurrences().get(begin).forEach(occurrence -> values.add(occurrence.getValue()));
+            result.add(begin + " " + values + " " + describe(sentence.getTagOccurrence(begin)));
+        });
+        return result;
+    }
+
+    private static String describe(Tag tag) {
+        return tag.getLemma() + " pos=" + tag.getPosAsList() + " ne=" + tag.getNeAsList();
+    }
+
     @Test
     public void testAnnotatedShortText2() {
         AnnotatedText annotateText = textProcessor.annotateText(
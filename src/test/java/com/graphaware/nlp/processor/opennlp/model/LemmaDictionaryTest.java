@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import opennlp.tools.lemmatizer.DictionaryLemmatizer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class LemmaDictionaryTest {
+
+    private static final String DICTIONARY = "went\tVBD\tgo\n"
+            + "men\tNNS\tman\n"
+            + "left\tVBD\tleave\n"
+            + "left\tJJ\tleft\n"
+            + "axes\tNNS\taxe#axis\n"
+            + "Paris\tNNP\tParis\n"
+            + "went\tVBD\twend\n";
+
+    private static final String[] WORDS = {"went", "Men", "left", "left", "axes", "Paris", "paris", "home", "went"};
+    private static final String[] TAGS = {"VBD", "NNS", "VBD", "JJ", "NNS", "NNP", "NNP", "NN", "NN"};
+
+    @Test
+    public void testSameLemmasAsTextDictionary() throws IOException {
+        DictionaryLemmatizer text = new DictionaryLemmatizer(stream(DICTIONARY));
+        LemmaDictionary compiled = LemmaDictionary.read(new ByteArrayInputStream(compile(DICTIONARY)));
+
+        assertEquals(6, compiled.size());
+        assertArrayEquals(text.lemmatize(WORDS, TAGS), compiled.lemmatize(WORDS, TAGS));
+        assertEquals(text.lemmatize(Arrays.asList(WORDS), Arrays.asList(TAGS)), compiled.lemmatize(Arrays.asList(WORDS), Arrays.asList(TAGS)));
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        Path file = Files.createTempFile("en-lemmatizer", LemmaDictionary.EXTENSION);
+        try {
+            try (OutputStream out = Files.newOutputStream(file)) {
+                LemmaDictionary.compile(stream(DICTIONARY), out);
+            }
+            LemmaDictionary mapped = LemmaDictionary.map(file);
+
+            assertArrayEquals(new DictionaryLemmatizer(stream(DICTIONARY)).lemmatize(WORDS, TAGS), mapped.lemmatize(WORDS, TAGS));
+            assertEquals(true, LemmaDictionary.isCompiled(file.toString()));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testMappedFileIsSharedByRegistry() throws IOException {
+        Path file = Files.createTempFile("en-lemmatizer", LemmaDictionary.EXTENSION);
+        try {
+            try (OutputStream out = Files.newOutputStream(file)) {
+                LemmaDictionary.compile(stream(DICTIONARY), out);
+            }
+            ModelRegistry registry = new ModelRegistry();
+            LemmaDictionary first = registry.acquire(file, LemmaDictionary::map);
+            LemmaDictionary second = registry.acquire(file, LemmaDictionary::map);
+
+            assertSame(first, second);
+            assertEquals(1, registry.getModelCount());
+            registry.release(first);
+            registry.release(second);
+            assertEquals(0, registry.getModelCount());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testUtf8Entries() throws IOException {
+        LemmaDictionary compiled = LemmaDictionary.read(new ByteArrayInputStream(compile("na\u00efve\tJJ\tna\u00efve\n\u00e9t\u00e9s\tNNS\t\u00e9t\u00e9\n")));
+
+        assertArrayEquals(new String[]{"na\u00efve", "\u00e9t\u00e9"}, compiled.lemmatize(new String[]{"Na\u00efve", "\u00e9t\u00e9s"}, new String[]{"JJ", "NNS"}));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidTextDictionary() throws IOException {
+        compile("went\tVBD\n");
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotCompiled() throws IOException {
+        LemmaDictionary.read(stream(DICTIONARY));
+    }
+
+    private static byte[] compile(String dictionary) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LemmaDictionary.compile(stream(dictionary), out);
+        return out.toByteArray();
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2013-2016 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.nlp.processor.opennlp.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ModelRegistryTest {
+
+    @Test
+    public void testSameContentIsSharedAndReferenceCounted() throws IOException {
+        ModelRegistry registry = new ModelRegistry();
+        AtomicInteger loads = new AtomicInteger();
+        ModelRegistry.ModelLoader<String> loader = (is) -> {
+            loads.incrementAndGet();
+            return new String(new Scanner(is, "UTF-8").useDelimiter("\\A").next());
+        };
+
+        String first = registry.acquire("en-test.bin", stream("model content"), loader);
+        String second = registry.acquire("en-test.bin", stream("model content"), loader);
+        String other = registry.acquire("en-test.bin", stream("changed content"), loader);
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(2, loads.get());
+        assertEquals(2, registry.getModelCount());
+        assertEquals("model content".length(), registry.getSavedBytes());
+
+        registry.release(first);
+        assertEquals(2, registry.getModelCount());
+        registry.release(second);
+        assertEquals(1, registry.getModelCount());
+        registry.release(other);
+        assertEquals(0, registry.getModelCount());
+    }
+
+    @Test
+    public void testFileIsIdentifiedWithoutReadingIt() throws IOException {
+        Path file = Files.createTempFile("en-test", ".bin");
+        try {
+            Files.write(file, "model content".getBytes(StandardCharsets.UTF_8));
+            ModelRegistry registry = new ModelRegistry();
+            AtomicInteger loads = new AtomicInteger();
+            ModelRegistry.ModelLoader<String> loader = (is) -> {
+                loads.incrementAndGet();
+                return new String(new Scanner(is, "UTF-8").useDelimiter("\\A").next());
+            };
+
+            String first = registry.acquire(file.toUri().toURL(), loader);
+            String second = registry.acquire(file.toUri().toURL(), loader);
+            assertSame(first, second);
+            assertEquals("model content", first);
+            assertEquals(1, loads.get());
+            assertTrue(registry.getKey(first).endsWith("#13-" + Files.getLastModifiedTime(file).toMillis()));
+
+            Files.write(file, "changed content".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+            String other = registry.acquire(file.toUri().toURL(), loader);
+            assertEquals("changed content", other);
+            assertEquals(2, loads.get());
+
+            registry.release(first);
+            registry.release(second);
+            registry.release(other);
+            assertEquals(0, registry.getModelCount());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testResourceIsOnlyReadWhenLoaded() throws IOException {
+        ModelRegistry registry = new ModelRegistry();
+        AtomicInteger reads = new AtomicInteger();
+        URL resource = resource("model content", 1000L, reads);
+        ModelRegistry.ModelLoader<String> loader = (is) -> new String(new Scanner(is, "UTF-8").useDelimiter("\\A").next());
+
+        String first = registry.acquire(resource, loader);
+        String second = registry.acquire(resource, loader);
+
+        assertSame(first, second);
+        assertEquals(1, reads.get());
+        registry.release(first);
+        registry.release(second);
+    }
+
+    @Test
+    public void testResourceWithoutModificationTimeIsChecksummed() throws IOException {
+        ModelRegistry registry = new ModelRegistry();
+        AtomicInteger reads = new AtomicInteger();
+        ModelRegistry.ModelLoader<String> loader = (is) -> new String(new Scanner(is, "UTF-8").useDelimiter("\\A").next());
+
+        String first = registry.acquire(resource("model content", 0L, reads), loader);
+        String second = registry.acquire(resource("model content", 0L, reads), loader);
+        String other = registry.acquire(resource("changed content", 0L, reads), loader);
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(3, reads.get());
+        assertEquals(2, registry.getModelCount());
+    }
+
+    private URL resource(String content, long modified, AtomicInteger reads) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return new URL(null, "test:en-test.bin", new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL url) {
+                return new URLConnection(url) {
+                    @Override
+                    public void connect() {
+                    }
+
+                    @Override
+                    public long getContentLengthLong() {
+                        return bytes.length;
+                    }
+
+                    @Override
+                    public long getLastModified() {
+                        return modified;
+                    }
+
+                    @Override
+                    public InputStream getInputStream() {
+                        reads.incrementAndGet();
+                        return new ByteArrayInputStream(bytes);
+                    }
+                };
+            }
+        });
+    }
+
+    private InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}